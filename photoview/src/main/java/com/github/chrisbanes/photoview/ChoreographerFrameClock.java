@@ -0,0 +1,89 @@
+package com.github.chrisbanes.photoview;
+
+import android.annotation.TargetApi;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * {@link FrameClock} backed by {@link Choreographer}. All runnables posted for a frame are run
+ * from a single vsync callback and see the vsync timestamp of that frame.
+ */
+@TargetApi(16)
+class ChoreographerFrameClock implements FrameClock, Choreographer.FrameCallback {
+
+    private static ChoreographerFrameClock sInstance;
+
+    /**
+     * Must be called from the UI thread, as {@link Choreographer} instances are per looper.
+     */
+    static ChoreographerFrameClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new ChoreographerFrameClock();
+        }
+        return sInstance;
+    }
+
+    private final Choreographer mChoreographer;
+    private ArrayList<Runnable> mPending = new ArrayList<Runnable>();
+    private ArrayList<Runnable> mRunning = new ArrayList<Runnable>();
+    private boolean mScheduled;
+    private boolean mInFrame;
+    private long mFrameTimeNanos;
+
+    private ChoreographerFrameClock() {
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    @Override
+    public long getFrameTimeNanos() {
+        // Outside of a frame (e.g. an animation being started from a touch event) the next
+        // vsync is not known yet, so fall back to now on the same time base
+        return mInFrame ? mFrameTimeNanos : System.nanoTime();
+    }
+
+    @Override
+    public void postFrameCallback(Runnable runnable) {
+        mPending.add(runnable);
+        if (!mScheduled) {
+            mScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void removeFrameCallback(Runnable runnable) {
+        while (mPending.remove(runnable)) {
+            // remove every pending occurrence
+        }
+        // The runnable may also be waiting further down the list of the frame being dispatched
+        for (int i = 0, size = mRunning.size(); i < size; i++) {
+            if (mRunning.get(i) == runnable) {
+                mRunning.set(i, null);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        mFrameTimeNanos = frameTimeNanos;
+        mInFrame = true;
+
+        // Swap the lists so that runnables reposting themselves land on the next frame
+        final ArrayList<Runnable> running = mPending;
+        mPending = mRunning;
+        mRunning = running;
+        try {
+            for (int i = 0; i < running.size(); i++) {
+                Runnable runnable = running.get(i);
+                if (runnable != null) {
+                    runnable.run();
+                }
+            }
+        } finally {
+            running.clear();
+            mInFrame = false;
+        }
+    }
+}
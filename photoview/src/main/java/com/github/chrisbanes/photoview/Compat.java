@@ -15,25 +15,20 @@
  *******************************************************************************/
 package com.github.chrisbanes.photoview;
 
-import android.annotation.TargetApi;
+import android.content.Context;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
-import android.view.View;
 
 class Compat {
 
-    private static final int SIXTY_FPS_INTERVAL = 1000 / 60;
-
-    public static void postOnAnimation(View view, Runnable runnable) {
+    /**
+     * @return the {@link FrameClock} animations use unless one is set explicitly
+     */
+    public static FrameClock getDefaultFrameClock(Context context) {
         if (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN) {
-            postOnAnimationJellyBean(view, runnable);
+            return ChoreographerFrameClock.getInstance();
         } else {
-            view.postDelayed(runnable, SIXTY_FPS_INTERVAL);
+            return new LegacyFrameClock(context);
         }
     }
-
-    @TargetApi(16)
-    private static void postOnAnimationJellyBean(View view, Runnable runnable) {
-        view.postOnAnimation(runnable);
-    }
 }
@@ -0,0 +1,271 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the compressed bytes of recently viewed images in memory, the tier below
+ * {@link SharedBitmapCache}: once a decoded bitmap is evicted, showing the image again only
+ * costs a decode, not another read from storage or the network. Compressed images are a
+ * fraction of the size of their bitmaps, so many more of them fit into the same budget. The
+ * bytes count against the Java heap, direct buffers included: ART allocates those on the managed
+ * heap as well.
+ * <p>
+ * Plug it in with {@link #decoder(String, StreamSource)}. Thread safe.
+ */
+public class EncodedImageCache {
+
+    /**
+     * Opens the encoded image from where it is stored.
+     */
+    public interface StreamSource {
+
+        InputStream open() throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final LruCache<String, ByteBuffer> mCache;
+    private final boolean mDirect;
+    private long mLoadedBytes;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxSize the budget in bytes
+     */
+    public EncodedImageCache(int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * @param maxSize the budget in bytes
+     * @param direct  whether to keep the bytes in direct buffers rather than wrapped byte arrays,
+     *                which only pays off for callers handing them to native code
+     */
+    public EncodedImageCache(int maxSize, boolean direct) {
+        mCache = new LruCache<String, ByteBuffer>(maxSize) {
+            @Override
+            protected int sizeOf(String key, ByteBuffer value) {
+                return value.capacity();
+            }
+        };
+        mDirect = direct;
+    }
+
+    /**
+     * @return a stream over the cached bytes of the image, or null if they are not cached
+     */
+    public InputStream get(String source) {
+        final ByteBuffer bytes = lookup(source);
+        return bytes != null ? new ByteBufferInputStream(bytes) : null;
+    }
+
+    private ByteBuffer lookup(String source) {
+        final ByteBuffer bytes = mCache.get(source);
+        synchronized (this) {
+            if (bytes != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the bytes of the image from the cache, or read them from the given source and cache
+     * them.
+     *
+     * @return a stream over the bytes
+     */
+    public InputStream get(String source, StreamSource streamSource) throws IOException {
+        return new ByteBufferInputStream(getBytes(source, streamSource));
+    }
+
+    private ByteBuffer getBytes(String source, StreamSource streamSource) throws IOException {
+        final ByteBuffer cached = lookup(source);
+        if (cached != null) {
+            return cached;
+        }
+        final InputStream in = streamSource.open();
+        final byte[] bytes;
+        try {
+            bytes = readFully(in);
+        } finally {
+            in.close();
+        }
+        synchronized (this) {
+            mLoadedBytes += bytes.length;
+        }
+        final ByteBuffer buffer;
+        if (bytes.length > mCache.maxSize()) {
+            // Would evict everything else and not fit anyway
+            buffer = ByteBuffer.wrap(bytes);
+        } else if (mDirect) {
+            buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+            mCache.put(source, buffer);
+        } else {
+            buffer = ByteBuffer.wrap(bytes);
+            mCache.put(source, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Get a decoder for {@link SharedBitmapCache#decode(String, int, int, SharedBitmapCache.Decoder)}
+     * which reads the image through this cache. The bytes are looked up once, on the first pass,
+     * and kept for the passes after it, so one decode counts as one hit or miss.
+     *
+     * @param source       the key of the image
+     * @param streamSource where to read the image from on a miss
+     */
+    public SharedBitmapCache.Decoder decoder(final String source, final StreamSource streamSource) {
+        return new SharedBitmapCache.Decoder() {
+            private ByteBuffer mBytes;
+
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                if (mBytes == null) {
+                    mBytes = getBytes(source, streamSource);
+                }
+                final InputStream in = new ByteBufferInputStream(mBytes);
+                try {
+                    return BitmapFactory.decodeStream(in, null, options);
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+
+    public void remove(String source) {
+        mCache.remove(source);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * @return the bytes cached
+     */
+    public int getSize() {
+        return mCache.size();
+    }
+
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the share of lookups served from memory, from 0 to 1
+     */
+    public synchronized float getHitRate() {
+        final int lookups = mHitCount + mMissCount;
+        return lookups > 0 ? mHitCount / (float) lookups : 0f;
+    }
+
+    public int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * @return the bytes read from the stream sources on misses
+     */
+    public synchronized long getLoadedBytes() {
+        return mLoadedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedImageCache[size=" + getSize() + ",maxSize=" + getMaxSize()
+                + ",hitRate=" + getHitRate() + ",evictions=" + getEvictionCount()
+                + ",loadedBytes=" + getLoadedBytes() + "]";
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, in.available()));
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a cached buffer through its own position, so any number of readers can share it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+        private int mMark;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+            mBuffer.rewind();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int count = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+            mBuffer.position(mBuffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mMark = mBuffer.position();
+        }
+
+        @Override
+        public synchronized void reset() {
+            mBuffer.position(mMark);
+        }
+    }
+}
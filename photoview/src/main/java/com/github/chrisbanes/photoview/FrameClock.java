@@ -0,0 +1,27 @@
+package com.github.chrisbanes.photoview;
+
+/**
+ * Source of frame timing for the animations run by {@link PhotoViewAttacher} (zoom, fling and
+ * drag-back). The default clock is driven by the display's vsync signal, so animations advance by
+ * real elapsed time whatever the refresh rate of the panel. A custom clock can be supplied via
+ * {@link PhotoViewAttacher#setFrameClock(FrameClock)}, for example to step animations
+ * deterministically in tests or benchmarks.
+ */
+public interface FrameClock {
+
+    /**
+     * @return the timestamp of the frame currently being produced, in nanoseconds, on the same
+     * monotonic time base as {@link System#nanoTime()}
+     */
+    long getFrameTimeNanos();
+
+    /**
+     * Run the given runnable when the next frame is produced.
+     */
+    void postFrameCallback(Runnable runnable);
+
+    /**
+     * Remove a runnable previously posted with {@link #postFrameCallback(Runnable)}.
+     */
+    void removeFrameCallback(Runnable runnable);
+}
@@ -0,0 +1,357 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.io.IOException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the images of a gallery ahead of time, so pages slide in already decoded rather than
+ * stalling on a decode when they are created. Feed it the pager's scroll position and it keeps a
+ * window of pages decoded in the direction of the swipe, wider the faster the swipe, at the
+ * sample size a {@link PhotoView} of the target size needs. Pages which fall out of the window
+ * are cancelled, pages behind the swipe are decoded last.
+ * <p>
+ * Adapters call {@link #take(int)} when they create a page. All methods must be called from the
+ * UI thread.
+ */
+public class GalleryPrefetcher {
+
+    /**
+     * Decodes the image of a page, on a background thread.
+     */
+    public interface Decoder {
+
+        /**
+         * Decode the image at the given position, e.g. with
+         * {@link BitmapFactory#decodeResource(android.content.res.Resources, int, BitmapFactory.Options)}.
+         * Called once with {@link BitmapFactory.Options#inJustDecodeBounds} set, and once with
+         * the {@link BitmapFactory.Options#inSampleSize} to decode at.
+         *
+         * @param position the page
+         * @param options  the options to decode with
+         * @return the bitmap, or null
+         */
+        Bitmap decode(int position, BitmapFactory.Options options) throws IOException;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a page has been decoded.
+     */
+    public interface OnPrefetchedListener {
+
+        /**
+         * @param position the page, whose bitmap can now be picked up with {@link #take(int)}
+         */
+        void onPrefetched(int position);
+    }
+
+    private static final int DEFAULT_PREFETCH_AHEAD = 2;
+    // A fast swipe widens the window by the pages it would cover in this time
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+    // Weight of the previous velocity when averaging, against the jitter of single frames
+    private static final float VELOCITY_SMOOTHING = 0.6f;
+    // Pages per second below which the swipe direction is left as it was
+    private static final float MIN_DIRECTION_VELOCITY = 0.2f;
+
+    private final Decoder mDecoder;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final SparseArray<PrefetchTask> mTasks = new SparseArray<PrefetchTask>();
+    private final SparseArray<Bitmap> mReady = new SparseArray<Bitmap>();
+    private final SparseBooleanArray mTaken = new SparseBooleanArray();
+    private OnPrefetchedListener mListener;
+
+    private int mCount;
+    private int mPrefetchAhead = DEFAULT_PREFETCH_AHEAD;
+    private int mTargetWidth;
+    private int mTargetHeight;
+
+    private int mCurrent = -1;
+    private int mDirection = 1;
+    private float mVelocity;
+    private float mLastScroll = -1;
+    private long mLastScrollTime;
+
+    // The window last laid out, to skip the work while it stays the same
+    private int mWindowCurrent = -1;
+    private int mWindowDirection;
+    private int mWindowAhead;
+
+    /**
+     * @param decoder the decoder for the images
+     * @param threads the number of background threads to decode on
+     */
+    public GalleryPrefetcher(Decoder decoder, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        mDecoder = decoder;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "PhotoView-prefetch");
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setOnPrefetchedListener(OnPrefetchedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param count the number of pages in the gallery
+     */
+    public void setCount(int count) {
+        mCount = count;
+        invalidateWindow();
+    }
+
+    /**
+     * @param pages the number of pages to keep decoded ahead of the current one while the
+     *              gallery is at rest
+     */
+    public void setPrefetchAhead(int pages) {
+        mPrefetchAhead = Math.max(0, pages);
+        invalidateWindow();
+    }
+
+    /**
+     * Set the size of the {@link PhotoView}s the images are shown in. Images are decoded at the
+     * largest power of two sample size at which they still fill it.
+     */
+    public void setTargetSize(int width, int height) {
+        if (width == mTargetWidth && height == mTargetHeight) {
+            return;
+        }
+        mTargetWidth = width;
+        mTargetHeight = height;
+        // What is decoded or queued is at the wrong size now
+        clear();
+    }
+
+    /**
+     * @param position the page now selected
+     */
+    public void setCurrentPage(int position) {
+        mCurrent = position;
+        updateWindow();
+    }
+
+    /**
+     * Follow the pager as it scrolls, e.g. from ViewPager.OnPageChangeListener#onPageScrolled().
+     *
+     * @param position       the first page shown
+     * @param positionOffset how far the next page is scrolled in, from 0 to 1
+     */
+    public void onPageScrolled(int position, float positionOffset) {
+        final float scroll = position + positionOffset;
+        final long now = SystemClock.uptimeMillis();
+        if (mLastScroll >= 0 && now > mLastScrollTime) {
+            final float velocity = (scroll - mLastScroll) * 1000f / (now - mLastScrollTime);
+            mVelocity = mVelocity * VELOCITY_SMOOTHING + velocity * (1f - VELOCITY_SMOOTHING);
+        }
+        mLastScroll = scroll;
+        mLastScrollTime = now;
+
+        if (Math.abs(mVelocity) >= MIN_DIRECTION_VELOCITY) {
+            mDirection = mVelocity > 0 ? 1 : -1;
+        }
+        mCurrent = Math.round(scroll);
+        updateWindow();
+    }
+
+    /**
+     * Get the prefetched image of a page which is being shown now. The page is not prefetched
+     * again until it has left the window.
+     *
+     * @param position the page
+     * @return its bitmap, or null if it is not decoded yet and has to be decoded by the caller
+     */
+    public Bitmap take(int position) {
+        mTaken.put(position, true);
+        cancel(position);
+        final Bitmap bitmap = mReady.get(position);
+        mReady.remove(position);
+        return bitmap;
+    }
+
+    /**
+     * Cancel everything queued and drop every prefetched image.
+     */
+    public void clear() {
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            cancel(mTasks.keyAt(i));
+        }
+        mReady.clear();
+        mTaken.clear();
+        invalidateWindow();
+    }
+
+    /**
+     * Stop the background threads. The prefetcher must not be used afterwards.
+     */
+    public void shutdown() {
+        clear();
+        mExecutor.shutdownNow();
+    }
+
+    private void invalidateWindow() {
+        mWindowCurrent = -1;
+        updateWindow();
+    }
+
+    private void updateWindow() {
+        if (mCurrent < 0 || mCount <= 0 || mTargetWidth <= 0 || mTargetHeight <= 0) {
+            return;
+        }
+        final int extra = (int) (Math.abs(mVelocity) * LOOKAHEAD_SECONDS);
+        final int ahead = mPrefetchAhead + Math.min(extra, mPrefetchAhead * 2);
+        if (mCurrent == mWindowCurrent && mDirection == mWindowDirection && ahead == mWindowAhead) {
+            return;
+        }
+        mWindowCurrent = mCurrent;
+        mWindowDirection = mDirection;
+        mWindowAhead = ahead;
+
+        // Drop whatever the window moved away from
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            final int position = mTasks.keyAt(i);
+            if (getPriority(position, ahead) < 0) {
+                cancel(position);
+            }
+        }
+        for (int i = mReady.size() - 1; i >= 0; i--) {
+            if (getPriority(mReady.keyAt(i), ahead) < 0) {
+                mReady.removeAt(i);
+            }
+        }
+        for (int i = mTaken.size() - 1; i >= 0; i--) {
+            if (getPriority(mTaken.keyAt(i), ahead) < 0) {
+                mTaken.removeAt(i);
+            }
+        }
+
+        // The current page first, then ahead in the swipe direction, then the one behind
+        for (int d = 0; d <= ahead + 1; d++) {
+            final int position = d <= ahead ? mCurrent + mDirection * d : mCurrent - mDirection;
+            if (position < 0 || position >= mCount || mTaken.get(position)
+                    || mReady.get(position) != null) {
+                continue;
+            }
+            final PrefetchTask task = mTasks.get(position);
+            if (task == null) {
+                final PrefetchTask newTask = new PrefetchTask(position, d, mTargetWidth, mTargetHeight);
+                mTasks.put(position, newTask);
+                mExecutor.execute(newTask);
+            } else if (task.mPriority != d && mExecutor.remove(task)) {
+                // Still queued, so requeue it at its new place
+                task.mPriority = d;
+                mExecutor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * @return the order in which the page is decoded, or -1 if it is outside the window
+     */
+    private int getPriority(int position, int ahead) {
+        final int distance = (position - mCurrent) * mDirection;
+        if (distance >= 0 && distance <= ahead) {
+            return distance;
+        }
+        return distance == -1 ? ahead + 1 : -1;
+    }
+
+    private void cancel(int position) {
+        final PrefetchTask task = mTasks.get(position);
+        if (task != null) {
+            task.mCancelled = true;
+            mExecutor.remove(task);
+            mTasks.remove(position);
+        }
+    }
+
+    private void onTaskDone(PrefetchTask task, Bitmap bitmap) {
+        if (mTasks.get(task.mPosition) != task) {
+            // Cancelled while decoding
+            return;
+        }
+        mTasks.remove(task.mPosition);
+        if (bitmap == null) {
+            return;
+        }
+        mReady.put(task.mPosition, bitmap);
+        if (mListener != null) {
+            mListener.onPrefetched(task.mPosition);
+        }
+    }
+
+    private class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+
+        private final int mPosition;
+        private final int mTargetWidth;
+        private final int mTargetHeight;
+        private volatile int mPriority;
+        private volatile boolean mCancelled;
+
+        PrefetchTask(int position, int priority, int targetWidth, int targetHeight) {
+            mPosition = position;
+            mPriority = priority;
+            mTargetWidth = targetWidth;
+            mTargetHeight = targetHeight;
+        }
+
+        @Override
+        public int compareTo(PrefetchTask other) {
+            return mPriority < other.mPriority ? -1 : (mPriority == other.mPriority ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            Bitmap bitmap = null;
+            try {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                mDecoder.decode(mPosition, options);
+                options.inSampleSize = Util.calculateInSampleSize(options.outWidth,
+                        options.outHeight, mTargetWidth, mTargetHeight);
+                options.inJustDecodeBounds = false;
+                if (!mCancelled) {
+                    bitmap = mDecoder.decode(mPosition, options);
+                }
+            } catch (IOException e) {
+                // Leave it to the adapter to decode when the page is shown
+            }
+            final Bitmap result = bitmap;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTaskDone(PrefetchTask.this, result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.drawable.Drawable;
+
+/**
+ * Interface definition for a callback which gets the image of a {@link PhotoView} back after
+ * the {@link PhotoViewMemoryGovernor} let go of it. Images set by resource or URI are restored
+ * without one.
+ */
+public interface ImageRestorer {
+
+    /**
+     * Called on the UI thread when the view is about to become visible again, so this should be
+     * quick, e.g. a lookup in a memory cache.
+     *
+     * @param view the view to restore the image of
+     * @return the image to show, or null to keep showing the released one
+     */
+    Drawable restoreImage(PhotoView view);
+}
@@ -0,0 +1,46 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * {@link FrameClock} for devices without {@link android.view.Choreographer}. Frames are
+ * approximated by posting at the refresh interval of the default display.
+ */
+class LegacyFrameClock implements FrameClock {
+
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private final long mFrameIntervalMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    LegacyFrameClock(Context context) {
+        float refreshRate = DEFAULT_REFRESH_RATE;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (windowManager != null) {
+            Display display = windowManager.getDefaultDisplay();
+            if (display != null && display.getRefreshRate() > 0) {
+                refreshRate = display.getRefreshRate();
+            }
+        }
+        mFrameIntervalMillis = Math.max(1, Math.round(1000 / refreshRate));
+    }
+
+    @Override
+    public long getFrameTimeNanos() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void postFrameCallback(Runnable runnable) {
+        mHandler.postDelayed(runnable, mFrameIntervalMillis);
+    }
+
+    @Override
+    public void removeFrameCallback(Runnable runnable) {
+        mHandler.removeCallbacks(runnable);
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.RectF;
+
+/**
+ * Interface definition for a callback to be invoked as soon as it is known where the viewport
+ * is headed, i.e. when a fling or an animated zoom such as a double-tap starts. It is the place
+ * to start loading a sharper version of the part of the image which will be on screen once the
+ * viewport comes to rest, rather than waiting for {@link OnViewportSettledListener}.
+ */
+public interface OnViewportPredictedListener {
+
+    /**
+     * Callback for when the viewport starts moving to a known destination.
+     *
+     * @param visibleRect the part of the image that will be visible, in the coordinates of the
+     *                    Drawable's intrinsic size. Do not keep a reference to it, it is reused.
+     */
+    void onViewportPredicted(RectF visibleRect);
+}
@@ -0,0 +1,20 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.RectF;
+
+/**
+ * Interface definition for a callback to be invoked once the viewport has come to rest, i.e. all
+ * touches are up and no fling, zoom or drag-back animation is running. Unlike
+ * {@link OnMatrixChangedListener} it is called once per interaction rather than once per frame,
+ * which makes it the place for expensive work such as loading a sharper version of the image.
+ */
+public interface OnViewportSettledListener {
+
+    /**
+     * Callback for when the viewport has settled.
+     *
+     * @param visibleRect the part of the image that is visible, in the coordinates of the
+     *                    Drawable's intrinsic size. Do not keep a reference to it, it is reused.
+     */
+    void onViewportSettled(RectF visibleRect);
+}
@@ -17,12 +17,20 @@ package com.github.chrisbanes.photoview;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
 /**
@@ -31,29 +39,67 @@ import android.widget.ImageView;
  */
 public class PhotoView extends ImageView {
 
+    private static final int IMAGE_FULL = 0;
+    private static final int IMAGE_DOWNSAMPLED = 1;
+    private static final int IMAGE_RELEASED = 2;
+
     private PhotoViewAttacher attacher;
+    private PhotoViewAttacherPool attacherPool;
+    private boolean directDraw;
+    private Matrix transitionMatrix;
+    // Whether the framework posed the view as ScaleType.MATRIX for a shared element transition
+    private boolean externalMatrix;
+    private SharedBitmap sharedBitmap;
+    private TileDecoder tileDecoder;
+    // Only while attached, see setTileDecoder()
+    private TileScheduler tileScheduler;
+    private final RectF clipRect = new RectF();
+
+    // Where the image came from, to get it back after PhotoViewMemoryGovernor let go of it
+    private int imageResId;
+    private Uri imageUri;
+    private ImageRestorer imageRestorer;
+    private int imageState = IMAGE_FULL;
+    private SharedBitmapCache releasedCache;
+    private String releasedSource;
+    private int releasedSampleSize;
+    private ViewportState releasedViewport;
+    private boolean swappingImage;
+    private ViewTreeObserver.OnPreDrawListener restoreListener;
+    // The observer restoreListener is added to, only while attached
+    private ViewTreeObserver restoreObserver;
 
     public PhotoView(Context context) {
         this(context, null);
     }
 
+    /**
+     * Create a PhotoView which borrows its {@link PhotoViewAttacher} from the given pool. Call
+     * {@link #releaseAttacher()} once the view is discarded to give the attacher back.
+     */
+    public PhotoView(Context context, PhotoViewAttacherPool pool) {
+        super(context);
+        init(pool);
+    }
+
     public PhotoView(Context context, AttributeSet attr) {
         this(context, attr, 0);
     }
 
     public PhotoView(Context context, AttributeSet attr, int defStyle) {
         super(context, attr, defStyle);
-        init();
+        init(null);
     }
 
     @TargetApi(21)
     public PhotoView(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
-        init();
+        init(null);
     }
 
-    private void init() {
-        attacher = new PhotoViewAttacher(this);
+    private void init(PhotoViewAttacherPool pool) {
+        attacherPool = pool;
+        attacher = pool != null ? pool.acquire(this) : new PhotoViewAttacher(this);
         //We always pose as a Matrix scale type, though we can change to another scale type
         //via the attacher
         super.setScaleType(ScaleType.MATRIX);
@@ -70,14 +116,218 @@ public class PhotoView extends ImageView {
         return attacher;
     }
 
+    /**
+     * Reset the zoom, pan and rotation and show the given drawable without allocating a new
+     * attacher, e.g. when this view is recycled for another image.
+     *
+     * @param drawable the drawable to show
+     */
+    public void rebind(Drawable drawable) {
+        setTileDecoder(null);
+        attacher.rebind(drawable);
+    }
+
+    /**
+     * Give the attacher back to the {@link PhotoViewAttacherPool} this view was created with. The
+     * view must not be used afterwards. Does nothing if the view was not created with a pool.
+     */
+    public void releaseAttacher() {
+        setTileDecoder(null);
+        releaseSharedBitmap(null);
+        final PhotoViewMemoryGovernor governor = PhotoViewMemoryGovernor.getInstance();
+        if (governor != null) {
+            governor.untrack(this);
+        }
+        if (attacherPool != null && attacher != null) {
+            attacherPool.release(attacher);
+            attacher = null;
+        }
+    }
+
+    /**
+     * Start batching changes to the drawable, scale type, rotation, scale levels and display
+     * matrix, so that they are applied together on {@link #commit()}.
+     *
+     * @see PhotoViewAttacher#beginUpdate()
+     */
+    public void beginUpdate() {
+        attacher.beginUpdate();
+    }
+
+    /**
+     * Apply the changes made since {@link #beginUpdate()}.
+     *
+     * @see PhotoViewAttacher#commit()
+     */
+    public void commit() {
+        attacher.commit();
+    }
+
+    /**
+     * Draw the drawable through the attacher's matrix directly in {@link #onDraw(Canvas)},
+     * instead of handing every new matrix to {@link ImageView#setImageMatrix(Matrix)}. This skips
+     * ImageView's per-frame matrix copying, comparison and bounds configuration.
+     *
+     * @param directDraw whether to draw directly
+     */
+    public void setDirectDraw(boolean directDraw) {
+        this.directDraw = directDraw;
+        attacher.setDirectDraw(directDraw);
+    }
+
+    public boolean isDirectDraw() {
+        return directDraw;
+    }
+
+    /**
+     * Draw the drawable through the given matrix, in the same coordinates as
+     * {@link #getImageMatrix()}, instead of the attacher's until called again with null. Used by
+     * {@link PhotoViewTransition} to animate the image without touching the attacher's state.
+     *
+     * @param matrix the matrix to draw with, or null to go back to the attacher's
+     */
+    public void setTransitionMatrix(Matrix matrix) {
+        if (matrix == null) {
+            transitionMatrix = null;
+        } else {
+            if (transitionMatrix == null) {
+                transitionMatrix = new Matrix();
+            }
+            transitionMatrix.set(matrix);
+        }
+        invalidate();
+    }
+
+    /**
+     * Get the part of this view which the image covers, i.e. the image bounds mapped through
+     * {@link #getImageMatrix()} and clipped to the padded content area, in view coordinates.
+     *
+     * @param outRect the rect to fill in, emptied if there is no image
+     */
+    public void getDisplayClip(Rect outRect) {
+        final Drawable drawable = getDrawable();
+        if (drawable == null) {
+            outRect.setEmpty();
+            return;
+        }
+        clipRect.set(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        getImageMatrix().mapRect(clipRect);
+        clipRect.offset(getPaddingLeft(), getPaddingTop());
+        clipRect.roundOut(outRect);
+        if (!outRect.intersect(getPaddingLeft(), getPaddingTop(),
+                getWidth() - getPaddingRight(), getHeight() - getPaddingBottom())) {
+            outRect.setEmpty();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final Matrix matrix = transitionMatrix != null ? transitionMatrix
+                : directDraw ? attacher.getDisplayedMatrix() : null;
+        if (matrix == null) {
+            super.onDraw(canvas);
+            if (tileScheduler != null) {
+                final int saveCount = canvas.save();
+                canvas.translate(getPaddingLeft(), getPaddingTop());
+                canvas.concat(attacher.getDisplayedMatrix());
+                tileScheduler.draw(canvas);
+                canvas.restoreToCount(saveCount);
+            }
+            return;
+        }
+        final Drawable drawable = getDrawable();
+        if (drawable == null || drawable.getIntrinsicWidth() == 0 || drawable.getIntrinsicHeight() == 0) {
+            return;
+        }
+
+        // Mirrors ImageView.onDraw() for the MATRIX scale type we pose as
+        final int saveCount = canvas.save();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && getCropToPadding()) {
+            final int scrollX = getScrollX();
+            final int scrollY = getScrollY();
+            canvas.clipRect(scrollX + getPaddingLeft(), scrollY + getPaddingTop(),
+                    scrollX + getWidth() - getPaddingRight(),
+                    scrollY + getHeight() - getPaddingBottom());
+        }
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        canvas.concat(matrix);
+        drawable.draw(canvas);
+        if (tileScheduler != null) {
+            tileScheduler.draw(canvas);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Show the image at full resolution wherever the zoom calls for more detail than the
+     * drawable has, decoding only the tiles in view with the given decoder. The drawable keeps
+     * showing the whole image, so it must be the same image the decoder reads, at any size.
+     * <p>
+     * Set null to drop the tiles, e.g. before showing another image. The decoder is not closed,
+     * that is left to the caller. Tiles are also dropped while the view is detached, and decoded
+     * again once it is attached.
+     *
+     * @param decoder the decoder of the full image, or null
+     */
+    public void setTileDecoder(TileDecoder decoder) {
+        if (decoder == tileDecoder) {
+            return;
+        }
+        tileDecoder = decoder;
+        stopTiles();
+        if (decoder != null && getWindowToken() != null) {
+            startTiles();
+        }
+    }
+
+    private void startTiles() {
+        tileScheduler = new TileScheduler(this, attacher.getFrameClock(), tileDecoder,
+                new TileScheduler.Callback() {
+                    @Override
+                    public void onTileLoaded() {
+                        invalidate();
+                    }
+                });
+        attacher.setTileScheduler(tileScheduler);
+    }
+
+    private void stopTiles() {
+        if (tileScheduler != null) {
+            attacher.setTileScheduler(null);
+            tileScheduler.shutdown();
+            tileScheduler = null;
+            invalidate();
+        }
+    }
+
     @Override
     public ScaleType getScaleType() {
-        return attacher.getScaleType();
+        return externalMatrix ? ScaleType.MATRIX : attacher.getScaleType();
     }
 
+    /**
+     * @return the matrix the image is drawn with right now, like {@link ImageView#getImageMatrix()}.
+     * This is what lets framework transitions such as ChangeImageTransform pick up the real
+     * zoom and pan. Do not change it.
+     */
     @Override
     public Matrix getImageMatrix() {
-        return attacher.getImageMatrix();
+        return transitionMatrix != null ? transitionMatrix : attacher.getDisplayedMatrix();
+    }
+
+    /**
+     * Matrices other than the attacher's own only come from a shared element transition putting
+     * the view into the state of the one it starts from, after {@link #setScaleType(ScaleType)}
+     * with {@link ScaleType#MATRIX}. They are drawn as a transition matrix, so
+     * {@link PhotoViewTransition} picks them up as its start values.
+     */
+    @Override
+    public void setImageMatrix(Matrix matrix) {
+        if (externalMatrix && attacher != null && matrix != attacher.getDisplayedMatrix()) {
+            setTransitionMatrix(matrix);
+        } else {
+            super.setImageMatrix(matrix);
+        }
     }
 
     @Override
@@ -90,8 +340,21 @@ public class PhotoView extends ImageView {
         attacher.setOnClickListener(l);
     }
 
+    /**
+     * {@link ScaleType#MATRIX} is taken to come from a shared element transition, which sets it
+     * together with {@link #setImageMatrix(Matrix)} and later restores the scale type it got from
+     * {@link #getScaleType()}. Any other scale type goes to the attacher.
+     */
     @Override
     public void setScaleType(ScaleType scaleType) {
+        if (scaleType == ScaleType.MATRIX) {
+            externalMatrix = true;
+            return;
+        }
+        if (externalMatrix) {
+            externalMatrix = false;
+            setTransitionMatrix(null);
+        }
         attacher.setScaleType(scaleType);
     }
 
@@ -100,27 +363,307 @@ public class PhotoView extends ImageView {
         super.setImageDrawable(drawable);
         // setImageBitmap calls through to this method
         attacher.update();
+        if (!swappingImage) {
+            releaseSharedBitmap(drawable);
+            onImageSet(0, null);
+        }
     }
 
     @Override
     public void setImageResource(int resId) {
         super.setImageResource(resId);
         attacher.update();
+        if (!swappingImage) {
+            releaseSharedBitmap(null);
+            onImageSet(resId, null);
+        }
     }
 
     @Override
     public void setImageURI(Uri uri) {
         super.setImageURI(uri);
         attacher.update();
+        if (!swappingImage) {
+            releaseSharedBitmap(null);
+            onImageSet(0, uri);
+        }
+    }
+
+    /**
+     * @param restorer how to get an image set as a drawable or bitmap back after the
+     *                 {@link PhotoViewMemoryGovernor} released it, or null
+     */
+    public void setImageRestorer(ImageRestorer restorer) {
+        imageRestorer = restorer;
+        retryRestore();
+    }
+
+    private void onImageSet(int resId, Uri uri) {
+        imageResId = resId;
+        imageUri = uri;
+        setImageState(IMAGE_FULL);
+        final PhotoViewMemoryGovernor governor = PhotoViewMemoryGovernor.getInstance();
+        if (governor != null) {
+            if (getDrawable() != null) {
+                governor.track(this);
+            } else {
+                governor.untrack(this);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes held by the image, estimated for drawables other than bitmaps
+     */
+    int getImageByteCount() {
+        final Drawable drawable = getDrawable();
+        if (drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() != null) {
+            return SharedBitmapCache.getByteCount(((BitmapDrawable) drawable).getBitmap());
+        }
+        return drawable != null ? Math.max(0, drawable.getIntrinsicWidth() * drawable.getIntrinsicHeight() * 4) : 0;
+    }
+
+    /**
+     * Let go of the image to free memory, keeping what is needed to restore it as soon as the
+     * view is drawn visibly again.
+     *
+     * @param downsample whether to keep showing a copy at half the resolution, rather than
+     *                   nothing at all
+     * @return true if the image was released or downsampled
+     */
+    boolean releaseImage(boolean downsample) {
+        final Drawable drawable = getDrawable();
+        if (drawable == null || imageState == IMAGE_RELEASED
+                || (downsample && imageState == IMAGE_DOWNSAMPLED)) {
+            return false;
+        }
+        final boolean restorable = imageResId != 0 || imageUri != null || imageRestorer != null;
+        Drawable replacement = null;
+        if (downsample) {
+            // A shared bitmap may still be in its cache when it is needed again
+            if (!(drawable instanceof BitmapDrawable) || (!restorable && sharedBitmap == null)) {
+                return false;
+            }
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap == null || bitmap.getWidth() < 2 || bitmap.getHeight() < 2) {
+                return false;
+            }
+            replacement = new BitmapDrawable(getResources(), Bitmap.createScaledBitmap(bitmap,
+                    bitmap.getWidth() / 2, bitmap.getHeight() / 2, true));
+        } else if (!restorable) {
+            return false;
+        }
+
+        if (sharedBitmap != null) {
+            releasedCache = sharedBitmap.getCache();
+            releasedSource = sharedBitmap.getSource();
+            releasedSampleSize = sharedBitmap.getSampleSize();
+        }
+        if (imageState == IMAGE_FULL) {
+            releasedViewport = attacher.getViewportState();
+        }
+        swapImage(replacement, false, releasedViewport);
+        // Only now that it is no longer drawn
+        releaseSharedBitmap(null);
+        setImageState(downsample ? IMAGE_DOWNSAMPLED : IMAGE_RELEASED);
+        return true;
+    }
+
+    /**
+     * Bring back the image let go of by {@link #releaseImage(boolean)}.
+     */
+    void restoreImage() {
+        if (imageState == IMAGE_FULL) {
+            return;
+        }
+        SharedBitmap shared = releasedCache != null
+                ? releasedCache.getBest(releasedSource, releasedSampleSize) : null;
+        if (shared != null) {
+            sharedBitmap = shared;
+            swapImage(new BitmapDrawable(getResources(), shared.getBitmap()), false, releasedViewport);
+        } else if (imageResId != 0 || imageUri != null) {
+            swapImage(null, true, releasedViewport);
+        } else if (imageRestorer != null) {
+            final Drawable restored = imageRestorer.restoreImage(this);
+            if (restored == null) {
+                disarmRestore();
+                return;
+            }
+            swapImage(restored, false, releasedViewport);
+        } else {
+            // Nothing to restore from, the downsampled copy stays until retryRestore()
+            disarmRestore();
+            return;
+        }
+        setImageState(IMAGE_FULL);
+    }
+
+    /**
+     * Try again to restore an image which could not be restored when it was last drawn, as
+     * the cache or the {@link ImageRestorer} may be able to by now.
+     */
+    void retryRestore() {
+        if (imageState != IMAGE_FULL && restoreListener == null) {
+            armRestore();
+        }
+    }
+
+    /**
+     * Show another version of the same image, keeping the zoom and pan and where it came from.
+     *
+     * @param drawable     the version to show
+     * @param reloadSource whether to load the resource or URI the image was set with instead
+     * @param viewport     the viewport to show it at, may be null
+     */
+    private void swapImage(Drawable drawable, boolean reloadSource, ViewportState viewport) {
+        attacher.beginUpdate();
+        swappingImage = true;
+        try {
+            if (reloadSource) {
+                if (imageResId != 0) {
+                    setImageResource(imageResId);
+                } else {
+                    setImageURI(imageUri);
+                }
+            } else {
+                setImageDrawable(drawable);
+            }
+            if (viewport != null && getDrawable() != null) {
+                attacher.setViewportState(viewport);
+            }
+        } finally {
+            swappingImage = false;
+            attacher.commit();
+        }
+    }
+
+    private void setImageState(int state) {
+        imageState = state;
+        if (state == IMAGE_FULL) {
+            releasedCache = null;
+            releasedSource = null;
+            releasedViewport = null;
+            disarmRestore();
+        } else if (restoreListener == null) {
+            armRestore();
+        }
+    }
+
+    private void armRestore() {
+        restoreListener = new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                final PhotoViewMemoryGovernor governor = PhotoViewMemoryGovernor.getInstance();
+                if (governor == null || !governor.isVisible(PhotoView.this)) {
+                    return true;
+                }
+                restoreImage();
+                // Skip this frame, the next one shows the restored image
+                return imageState != IMAGE_FULL;
+            }
+        };
+        if (getWindowToken() != null) {
+            addRestoreListener();
+        }
+    }
+
+    /**
+     * Stop checking for a restore on every frame, when there is nothing left to restore or
+     * nothing to restore from.
+     */
+    private void disarmRestore() {
+        if (restoreListener != null) {
+            removeRestoreListener();
+            restoreListener = null;
+        }
+    }
+
+    private void addRestoreListener() {
+        restoreObserver = getViewTreeObserver();
+        restoreObserver.addOnPreDrawListener(restoreListener);
+    }
+
+    private void removeRestoreListener() {
+        if (restoreObserver != null) {
+            if (restoreObserver.isAlive()) {
+                restoreObserver.removeOnPreDrawListener(restoreListener);
+            }
+            restoreObserver = null;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (restoreListener != null) {
+            addRestoreListener();
+        }
+        if (tileDecoder != null && tileScheduler == null) {
+            startTiles();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // A listener left on the window's observer would keep the view from being collected,
+        // as would the tile scheduler's memory callbacks
+        removeRestoreListener();
+        stopTiles();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Show a bitmap from a {@link SharedBitmapCache}. The view takes over the given reference and
+     * releases it as soon as it shows something else.
+     *
+     * @param bitmap the bitmap to show
+     */
+    public void setImageBitmap(SharedBitmap bitmap) {
+        final SharedBitmap previous = sharedBitmap;
+        sharedBitmap = bitmap;
+        setImageBitmap(bitmap.getBitmap());
+        // Only now that it is no longer drawn may the cache reuse the previous one
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    /**
+     * Release the shared bitmap, unless it is what the given drawable shows.
+     */
+    private void releaseSharedBitmap(Drawable drawable) {
+        if (sharedBitmap == null) {
+            return;
+        }
+        if (drawable instanceof BitmapDrawable
+                && ((BitmapDrawable) drawable).getBitmap() == sharedBitmap.getBitmap()) {
+            return;
+        }
+        sharedBitmap.release();
+        sharedBitmap = null;
     }
 
     @Override
-    protected boolean setFrame(int l, int t, int r, int b) {
-        boolean changed = super.setFrame(l, t, r, b);
-        if (changed && !blockFrame) {
-            attacher.update();
+    protected Parcelable onSaveInstanceState() {
+        final Parcelable superState = super.onSaveInstanceState();
+        final ViewportState viewport = attacher.getViewportState();
+        if (viewport == null) {
+            return superState;
         }
-        return changed;
+        SavedState state = new SavedState(superState);
+        state.viewport = viewport;
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        attacher.setViewportState(savedState.viewport);
     }
 
     public void setRotationTo(float rotationDegree) {
@@ -144,6 +687,29 @@ public class PhotoView extends ImageView {
         attacher.setZoomable(zoomable);
     }
 
+    /**
+     * @see PhotoViewAttacher#setImageId(String)
+     */
+    public void setImageId(String imageId) {
+        attacher.setImageId(imageId);
+    }
+
+    public String getImageId() {
+        return attacher.getImageId();
+    }
+
+    public void setViewportCache(ViewportCache cache) {
+        attacher.setViewportCache(cache);
+    }
+
+    public ViewportState getViewportState() {
+        return attacher.getViewportState();
+    }
+
+    public void setViewportState(ViewportState state) {
+        attacher.setViewportState(state);
+    }
+
     public RectF getDisplayRect() {
         return attacher.getDisplayRect();
     }
@@ -188,6 +754,14 @@ public class PhotoView extends ImageView {
         attacher.setMaximumScale(maximumScale);
     }
 
+    public void setConfig(PhotoViewConfig config) {
+        attacher.setConfig(config);
+    }
+
+    public PhotoViewConfig getConfig() {
+        return attacher.getConfig();
+    }
+
     public void setScaleLevels(float minimumScale, float mediumScale, float maximumScale) {
         attacher.setScaleLevels(minimumScale, mediumScale, maximumScale);
     }
@@ -196,6 +770,18 @@ public class PhotoView extends ImageView {
         attacher.setOnMatrixChangeListener(listener);
     }
 
+    public void setOnViewportSettledListener(OnViewportSettledListener listener) {
+        attacher.setOnViewportSettledListener(listener);
+    }
+
+    public void setOnViewportPredictedListener(OnViewportPredictedListener listener) {
+        attacher.setOnViewportPredictedListener(listener);
+    }
+
+    public void setSettleDelay(int milliseconds) {
+        attacher.setSettleDelay(milliseconds);
+    }
+
     public void setOnPhotoTapListener(OnPhotoTapListener listener) {
         attacher.setOnPhotoTapListener(listener);
     }
@@ -220,6 +806,18 @@ public class PhotoView extends ImageView {
         attacher.setZoomTransitionDuration(milliseconds);
     }
 
+    public void setPixelSnapping(boolean snap) {
+        attacher.setPixelSnapping(snap);
+    }
+
+    public void setAdaptiveQuality(boolean adaptive) {
+        attacher.setAdaptiveQuality(adaptive);
+    }
+
+    public void setFrameClock(FrameClock frameClock) {
+        attacher.setFrameClock(frameClock);
+    }
+
     public void setOnDoubleTapListener(GestureDetector.OnDoubleTapListener onDoubleTapListener) {
         attacher.setOnDoubleTapListener(onDoubleTapListener);
     }
@@ -236,19 +834,15 @@ public class PhotoView extends ImageView {
         attacher.setDragToFinishListener(distance, listener);
     }
 
-    private boolean blockFrame = false;
     public void doAnim() {
-        blockFrame = true;
         attacher.doAnim();
     }
 
     public void doReverse() {
-        blockFrame = true;
         attacher.doReverse();
     }
 
     public void setOriginArgs(int fullSizeW, int fullSizeH, int srcW, int srcH, int bitmapW, int bitmapH) {
-        blockFrame = true;
         attacher.setOriginArgs(fullSizeW, fullSizeH, srcW, srcH, bitmapW, bitmapH);
     }
 
@@ -272,8 +866,46 @@ public class PhotoView extends ImageView {
         attacher.enableDragToFinish(enable);
     }
 
+    /**
+     * @see PhotoViewAttacher#setDragViewToFinish(boolean)
+     */
+    public void setDragViewToFinish(boolean enable) {
+        attacher.setDragViewToFinish(enable);
+    }
+
     public boolean isScaled() {
         return attacher.isScaled();
     }
 
+    static class SavedState extends BaseSavedState {
+
+        ViewportState viewport;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            viewport = in.readParcelable(ViewportState.class.getClassLoader());
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeParcelable(viewport, flags);
+        }
+
+        public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
 }
@@ -16,12 +16,16 @@
 package com.github.chrisbanes.photoview;
 
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Matrix;
 import android.graphics.Matrix.ScaleToFit;
 import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
@@ -41,12 +45,14 @@ import android.widget.OverScroller;
  */
 public class PhotoViewAttacher implements View.OnTouchListener,
         OnGestureListener,
-        View.OnLayoutChangeListener {
+        View.OnLayoutChangeListener,
+        View.OnAttachStateChangeListener {
 
-    private static float DEFAULT_MAX_SCALE = 3.0f;
-    private static float DEFAULT_MID_SCALE = 1.75f;
-    private static float DEFAULT_MIN_SCALE = 1.0f;
-    private static int DEFAULT_ZOOM_DURATION = 200;
+    private static final float NANOS_PER_MILLI = 1000000f;
+    private static final float PIXEL_SNAP_EPSILON = 0.001f;
+    // A new matrix which moves no corner of the image further than this, in view pixels, is not
+    // visibly different from the one on screen
+    private static final float NO_OP_PIXEL_EPSILON = 0.5f;
 
     private static final int EDGE_NONE = -1;
     private static final int EDGE_LEFT = 0;
@@ -54,13 +60,12 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private static final int EDGE_BOTH = 2;
     private static int SINGLE_TOUCH = 1;
 
-    private Interpolator mInterpolator = new AccelerateDecelerateInterpolator();
-    private int mZoomDuration = DEFAULT_ZOOM_DURATION;
-    private float mMinScale = DEFAULT_MIN_SCALE;
-    private float mMidScale = DEFAULT_MID_SCALE;
-    private float mMaxScale = DEFAULT_MAX_SCALE;
+    private static final Interpolator DRAG_BACK_INTERPOLATOR = new AccelerateDecelerateInterpolator();
+    // How far the view shrinks when it is dragged all the way to finish
+    private static final float DRAG_VIEW_MIN_SCALE = 0.6f;
+
+    private PhotoViewConfig mConfig = PhotoViewConfig.DEFAULT;
 
-    private boolean mAllowParentInterceptOnEdge = true;
     private boolean mBlockParentIntercept = false;
 
     private ImageView mImageView;
@@ -73,8 +78,21 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private final Matrix mBaseMatrix = new Matrix();
     private final Matrix mDrawMatrix = new Matrix();
     private final Matrix mSuppMatrix = new Matrix();
+    private final Matrix mDisplayedMatrix = new Matrix();
+    private final Matrix mCandidateMatrix = new Matrix();
+    // Corners of the image mapped by a new matrix and by the one on screen, see isDisplayed()
+    private final float[] mCorners = new float[8];
+    private final float[] mDisplayedCorners = new float[8];
+    private boolean mDisplayedValid = false;
+    private Drawable mDisplayedDrawable;
     private final RectF mDisplayRect = new RectF();
     private final float[] mMatrixValues = new float[9];
+    private final Matrix mTempMatrix = new Matrix();
+    private final float[] mTempPoint = new float[2];
+    // Image point to keep centred once a pending relayout has rebuilt the base matrix
+    private final float[] mRelayoutPoint = new float[2];
+    private boolean mPendingRelayout = false;
+    private final float[] mBoundsDelta = new float[2];
 
     // Listeners
     private OnMatrixChangedListener mMatrixChangeListener;
@@ -85,8 +103,15 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private OnScaleChangedListener mScaleChangeListener;
     private OnSingleFlingListener mSingleFlingListener;
     private OnDragToFinishListener mDragToFinishListener;
+    private OnViewportSettledListener mViewportSettledListener;
+    private OnViewportPredictedListener mViewportPredictedListener;
 
+    private FrameClock mFrameClock;
+    private FlingRunnable mFlingRunnable;
     private FlingRunnable mCurrentFlingRunnable;
+    private AnimatedZoomRunnable mCurrentZoomRunnable;
+    private DragBackRunnable mCurrentDragBackRunnable;
+    private ValueAnimator mLayoutAnimator;
     private int mScrollEdge = EDGE_BOTH;
     private float mBaseRotation;
 
@@ -96,120 +121,304 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     private boolean mEnableDragToFinish = true;
     private boolean mIsDragging = false;
 
-    private int mDragToFinishDistance = 500;
-
     private float mAnchorX= 0;
     private float mAnchorY = 0;
 
-    public PhotoViewAttacher(ImageView imageView) {
-        mImageView = imageView;
-        imageView.setOnTouchListener(this);
-        imageView.addOnLayoutChangeListener(this);
-
-        if (imageView.isInEditMode()) {
-            return;
+    // Drag to finish by moving the view itself, see setDragViewToFinish()
+    private boolean mDragViewToFinish = false;
+    private boolean mViewDragActive = false;
+    private boolean mViewMoved = false;
+    private float mViewDragVelocityY = 0;
+    private ViewSettleRunnable mCurrentViewSettleRunnable;
+    private boolean mDragProgressPosted = false;
+    private final Runnable mDragProgressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDragProgressPosted = false;
+            dispatchDragProgress(getViewDragFraction());
         }
+    };
+
+    private boolean mDirectDraw = false;
+    private boolean mPixelSnapping = false;
+
+    // Motion tracking and adaptive quality, see setAdaptiveQuality()
+    private boolean mTouching = false;
+    private boolean mAdaptiveQuality = false;
+    private boolean mLowQuality = false;
+    private boolean mFilterWasEnabled = true;
+    // The drawable whose filtering was turned off, which need not be the current one any more
+    private Drawable mLowQualityDrawable;
+    private boolean mIdleCheckPosted = false;
+    private final Runnable mIdleCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIdleCheckPosted = false;
+            if (!isInMotion()) {
+                onIdle();
+            }
+        }
+    };
+
+    // Settled notification, see setOnViewportSettledListener()
+    private boolean mViewportChanged = false;
+    private boolean mSettledPosted = false;
+    private final RectF mVisibleRect = new RectF();
+    private final Matrix mInverseMatrix = new Matrix();
+    private final Runnable mSettledRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSettledPosted = false;
+            // Touch up schedules another idle check if a finger is still down
+            if (!mTouching && !isInMotion()) {
+                dispatchViewportSettled();
+            }
+        }
+    };
 
-        mBaseRotation = 0.0f;
+    // Tiles of large images and the viewport they are prefetched for, see setTileScheduler()
+    private TileScheduler mTileScheduler;
+    private final Matrix mPredictedMatrix = new Matrix();
+    // The fling or zoom runnable which published the prediction, null if there is none
+    private Object mPredictionOwner;
 
-        // Create Gesture Detectors...
-        mScaleDragDetector = new CustomGestureDetector(imageView.getContext(), this);
+    // Viewport memory, see setImageId()
+    private String mImageId;
+    private ViewportCache mViewportCache;
+    private ViewportState mPendingViewportState;
 
-        mGestureDetector = new GestureDetector(imageView.getContext(), new GestureDetector.SimpleOnGestureListener() {
+    // Batched updates, see beginUpdate()
+    private int mUpdateDepth = 0;
+    private boolean mPendingUpdate = false;
+    private boolean mPendingDisplay = false;
 
-            // forward long click listener
-            @Override
-            public void onLongPress(MotionEvent e) {
-                if (mLongClickListener != null) {
-                    mLongClickListener.onLongClick(mImageView);
-                }
+    private final GestureDetector.OnDoubleTapListener mDefaultOnDoubleTapListener = new GestureDetector.OnDoubleTapListener() {
+        @Override
+        public boolean onSingleTapConfirmed(MotionEvent e) {
+            if(mIsDragging) {
+                return false;
             }
+            if (mOnClickListener != null) {
+                mOnClickListener.onClick(mImageView);
+            }
+            final RectF displayRect = getDisplayRect();
 
-            @Override
-            public boolean onFling(MotionEvent e1, MotionEvent e2,
-                                   float velocityX, float velocityY) {
-                if (mSingleFlingListener != null) {
-                    if (getScale() > DEFAULT_MIN_SCALE) {
-                        return false;
-                    }
+            if (displayRect != null) {
+                final float x = e.getX(), y = e.getY();
 
-                    if (MotionEventCompat.getPointerCount(e1) > SINGLE_TOUCH
-                            || MotionEventCompat.getPointerCount(e2) > SINGLE_TOUCH) {
-                        return false;
-                    }
+                // Check to see if the user tapped on the photo
+                if (displayRect.contains(x, y)) {
 
-                    return mSingleFlingListener.onFling(e1, e2, velocityX, velocityY);
+                    float xResult = (x - displayRect.left)
+                            / displayRect.width();
+                    float yResult = (y - displayRect.top)
+                            / displayRect.height();
+
+                    if (mPhotoTapListener != null) {
+                        mPhotoTapListener.onPhotoTap(mImageView, xResult, yResult);
+                    }
+                    return true;
+                } else {
+                    if (mOutsidePhotoTapListener != null) {
+                        mOutsidePhotoTapListener.onOutsidePhotoTap(mImageView);
+                    }
                 }
-                return false;
             }
-        });
+            return false;
+        }
 
-        mGestureDetector.setOnDoubleTapListener(new GestureDetector.OnDoubleTapListener() {
-            @Override
-            public boolean onSingleTapConfirmed(MotionEvent e) {
-                if(mIsDragging) {
-                    return false;
-                }
-                if (mOnClickListener != null) {
-                    mOnClickListener.onClick(mImageView);
+        @Override
+        public boolean onDoubleTap(MotionEvent ev) {
+            try {
+                float scale = getScale();
+                float x = ev.getX();
+                float y = ev.getY();
+
+                if (scale < getMediumScale()) {
+                    setScale(getMediumScale(), x, y, true);
+                } else if (scale >= getMediumScale() && scale < getMaximumScale()) {
+                    setScale(getMaximumScale(), x, y, true);
+                } else {
+                    setScale(getMinimumScale(), x, y, true);
                 }
-                final RectF displayRect = getDisplayRect();
+            } catch (ArrayIndexOutOfBoundsException e) {
+                // Can sometimes happen when getX() and getY() is called
+            }
 
-                if (displayRect != null) {
-                    final float x = e.getX(), y = e.getY();
+            return true;
+        }
 
-                    // Check to see if the user tapped on the photo
-                    if (displayRect.contains(x, y)) {
+        @Override
+        public boolean onDoubleTapEvent(MotionEvent e) {
+            // Wait for the confirmed onDoubleTap() instead
+            return false;
+        }
+    };
 
-                        float xResult = (x - displayRect.left)
-                                / displayRect.width();
-                        float yResult = (y - displayRect.top)
-                                / displayRect.height();
+    private final GestureDetector.OnGestureListener mGestureListener = new GestureDetector.SimpleOnGestureListener() {
 
-                        if (mPhotoTapListener != null) {
-                            mPhotoTapListener.onPhotoTap(mImageView, xResult, yResult);
-                        }
-                        return true;
-                    } else {
-                        if (mOutsidePhotoTapListener != null) {
-                            mOutsidePhotoTapListener.onOutsidePhotoTap(mImageView);
-                        }
-                    }
-                }
-                return false;
+        // forward long click listener
+        @Override
+        public void onLongPress(MotionEvent e) {
+            if (mLongClickListener != null) {
+                mLongClickListener.onLongClick(mImageView);
             }
+        }
 
-            @Override
-            public boolean onDoubleTap(MotionEvent ev) {
-                try {
-                    float scale = getScale();
-                    float x = ev.getX();
-                    float y = ev.getY();
-
-                    if (scale < getMediumScale()) {
-                        setScale(getMediumScale(), x, y, true);
-                    } else if (scale >= getMediumScale() && scale < getMaximumScale()) {
-                        setScale(getMaximumScale(), x, y, true);
-                    } else {
-                        setScale(getMinimumScale(), x, y, true);
-                    }
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    // Can sometimes happen when getX() and getY() is called
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2,
+                               float velocityX, float velocityY) {
+            if (mSingleFlingListener != null) {
+                if (getScale() > PhotoViewConfig.DEFAULT_MIN_SCALE) {
+                    return false;
                 }
 
-                return true;
-            }
+                if (MotionEventCompat.getPointerCount(e1) > SINGLE_TOUCH
+                        || MotionEventCompat.getPointerCount(e2) > SINGLE_TOUCH) {
+                    return false;
+                }
 
-            @Override
-            public boolean onDoubleTapEvent(MotionEvent e) {
-                // Wait for the confirmed onDoubleTap() instead
-                return false;
+                return mSingleFlingListener.onFling(e1, e2, velocityX, velocityY);
             }
-        });
+            return false;
+        }
+    };
+
+    private GestureDetector.OnDoubleTapListener mOnDoubleTapListener = mDefaultOnDoubleTapListener;
+
+    public PhotoViewAttacher(ImageView imageView) {
+        bind(imageView);
+    }
+
+    /**
+     * Gesture detectors are only needed once the user touches the view, which many views in a
+     * gallery never are, so they are created on the first {@link MotionEvent#ACTION_DOWN}.
+     */
+    private void ensureDetectors() {
+        if (mScaleDragDetector != null || mImageView.isInEditMode()) {
+            return;
+        }
+        mScaleDragDetector = new CustomGestureDetector(mImageView.getContext(), this);
+        mGestureDetector = new GestureDetector(mImageView.getContext(), mGestureListener);
+        mGestureDetector.setOnDoubleTapListener(mOnDoubleTapListener);
+    }
+
+    /**
+     * Attach this attacher to the given view. Used when an attacher is handed out again by a
+     * {@link PhotoViewAttacherPool}.
+     */
+    void bind(ImageView imageView) {
+        mImageView = imageView;
+        imageView.setOnTouchListener(this);
+        imageView.addOnLayoutChangeListener(this);
+        imageView.addOnAttachStateChangeListener(this);
+    }
+
+    /**
+     * Detach this attacher from its view and drop every listener and setting, so that it can be
+     * handed to another view by a {@link PhotoViewAttacherPool}.
+     */
+    void unbind() {
+        if (mImageView == null) {
+            return;
+        }
+        reset();
+        mViewportCache = null;
+        // Puts the drawable's filtering back while the view is still known
+        setAdaptiveQuality(false);
+
+        mImageView.setOnTouchListener(null);
+        mImageView.removeOnLayoutChangeListener(this);
+        mImageView.removeOnAttachStateChangeListener(this);
+        mImageView = null;
+
+        mMatrixChangeListener = null;
+        mPhotoTapListener = null;
+        mOutsidePhotoTapListener = null;
+        mOnClickListener = null;
+        mLongClickListener = null;
+        mScaleChangeListener = null;
+        mSingleFlingListener = null;
+        mDragToFinishListener = null;
+        mViewportSettledListener = null;
+        mViewportPredictedListener = null;
+        mTileScheduler = null;
+        setOnDoubleTapListener(mDefaultOnDoubleTapListener);
+
+        mConfig = PhotoViewConfig.DEFAULT;
+        mDirectDraw = false;
+        mPixelSnapping = false;
+        mFrameClock = null;
+        mZoomEnabled = true;
+        mScaleType = ScaleType.FIT_CENTER;
+        mEnableDragToFinish = true;
+        mDragViewToFinish = false;
+        mRelayoutBlocked = false;
+    }
+
+    /**
+     * Return to a clean viewport: any running fling, zoom or drag-back animation is cancelled and
+     * the zoom, pan and rotation are dropped. Listeners and settings such as the scale levels are
+     * kept. The viewport of the current image is saved to the {@link ViewportCache}, if any, and
+     * the image id is cleared. Nothing is displayed until the next {@link #update()}.
+     */
+    public void reset() {
+        saveViewportToCache();
+        mImageId = null;
+        mPendingViewportState = null;
+
+        cancelFling();
+        cancelZoom();
+        cancelDragBack();
+        endLayoutAnimation();
+        restoreDraggedView();
+        cancelIdleCheck();
+        cancelViewportSettled();
+        mViewportChanged = false;
+        setLowQuality(false);
+        mTouching = false;
+
+        mBaseMatrix.reset();
+        mSuppMatrix.reset();
+        mDrawMatrix.reset();
+        mDisplayedValid = false;
+        mDisplayedDrawable = null;
+        mBaseRotation = 0.0f;
+        mScrollEdge = EDGE_BOTH;
+        mBlockParentIntercept = false;
+        mDragToFinish = false;
+        mIsDragging = false;
+        mAnchorX = 0;
+        mAnchorY = 0;
+
+        mBigWidth = mBigHeight = 0;
+        mSrcWidth = mSrcHeight = 0;
+        srcW = srcH = 0;
+        bitmapW = bitmapH = 0;
+    }
+
+    /**
+     * {@link #reset()} this attacher and show the given drawable, e.g. when the view is recycled
+     * for another image.
+     *
+     * @param drawable the drawable to show
+     */
+    public void rebind(Drawable drawable) {
+        beginUpdate();
+        try {
+            reset();
+            mImageView.setImageDrawable(drawable);
+            update();
+        } finally {
+            commit();
+        }
     }
 
     public void setOnDoubleTapListener(GestureDetector.OnDoubleTapListener newOnDoubleTapListener) {
-        this.mGestureDetector.setOnDoubleTapListener(newOnDoubleTapListener);
+        mOnDoubleTapListener = newOnDoubleTapListener;
+        if (mGestureDetector != null) {
+            mGestureDetector.setOnDoubleTapListener(newOnDoubleTapListener);
+        }
     }
 
     public void setOnScaleChangeListener(OnScaleChangedListener onScaleChangeListener) {
@@ -240,6 +449,9 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         }
 
         mSuppMatrix.set(finalMatrix);
+        if (deferDisplay()) {
+            return true;
+        }
         setImageViewMatrix(getDrawMatrix());
         checkMatrixBounds();
 
@@ -247,10 +459,14 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     public void setBaseRotation(final float degrees) {
-        mBaseRotation = degrees % 360;
-        update();
-        setRotationBy(mBaseRotation);
-        checkAndDisplayMatrix();
+        beginUpdate();
+        try {
+            mBaseRotation = degrees % 360;
+            update();
+            setRotationBy(mBaseRotation);
+        } finally {
+            commit();
+        }
     }
 
     public void setRotationTo(float degrees) {
@@ -264,15 +480,15 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     public float getMinimumScale() {
-        return mMinScale;
+        return mConfig.getMinimumScale();
     }
 
     public float getMediumScale() {
-        return mMidScale;
+        return mConfig.getMediumScale();
     }
 
     public float getMaximumScale() {
-        return mMaxScale;
+        return mConfig.getMaximumScale();
     }
 
     public float getScale() {
@@ -294,8 +510,12 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             return; // Do not drag if we are already scaling
         }
 
+        if (mViewMoved || (isDraggindDown && canDragViewToFinish())) {
+            dragView(dx, dy);
+            return;
+        }
+
         mSuppMatrix.postTranslate(dx, dy);
-        System.out.println("++++++++++" + dx + "/" + dy);
         if(isDraggindDown) {
             mIsDragging = true;
             computeDrag();
@@ -312,7 +532,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
          * the edge, aka 'overscrolling', let the parent take over).
          */
         ViewParent parent = mImageView.getParent();
-        if (mAllowParentInterceptOnEdge && !mScaleDragDetector.isScaling() && !mBlockParentIntercept) {
+        if (mConfig.getAllowParentInterceptOnEdge() && !mScaleDragDetector.isScaling() && !mBlockParentIntercept) {
             if (mScrollEdge == EDGE_BOTH
                     || (mScrollEdge == EDGE_LEFT && dx >= 1f)
                     || (mScrollEdge == EDGE_RIGHT && dx <= -1f)) {
@@ -330,29 +550,223 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     @Override
     public void onDragEnd(boolean down) {
         mIsDragging = false;
+        if (mViewDragActive) {
+            final float translationY = ViewCompat.getTranslationY(mImageView);
+            final int velocity = mConfig.getDragToFinishVelocity();
+            // A flick decides on its own, either way; otherwise the distance does
+            final boolean dismiss = mViewDragVelocityY >= velocity
+                    ? translationY > 0
+                    : mViewDragVelocityY > -velocity
+                    && translationY >= mConfig.getDragToFinishDistance();
+            settleView(dismiss);
+            return;
+        }
         reverseFromDrag();
     }
 
     @Override
     public void onFling(boolean down, float startX, float startY, float velocityX,
                         float velocityY) {
+        if (mViewDragActive) {
+            // The detector reports the velocity of the content, i.e. against the finger
+            mViewDragVelocityY = -velocityY;
+            return;
+        }
         if(down)
             return;
-        mCurrentFlingRunnable = new FlingRunnable(mImageView.getContext());
+        cancelFling();
+        if (mFlingRunnable == null) {
+            mFlingRunnable = new FlingRunnable(mImageView.getContext());
+        }
+        mCurrentFlingRunnable = mFlingRunnable;
         mCurrentFlingRunnable.fling(getImageViewWidth(mImageView),
                 getImageViewHeight(mImageView), (int) velocityX, (int) velocityY);
-        mImageView.post(mCurrentFlingRunnable);
+        postOnAnimation(mCurrentFlingRunnable);
     }
 
     @Override
     public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
         // Update our base matrix, as the bounds have changed
-//        updateBaseMatrix(mImageView.getDrawable());
+        if (!mRelayoutBlocked) {
+            relayout(oldRight - oldLeft, oldBottom - oldTop);
+        }
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        // Pick up the animations parked when the view was detached
+        if (mCurrentZoomRunnable != null) {
+            mCurrentZoomRunnable.resume();
+            postOnAnimation(mCurrentZoomRunnable);
+        }
+        if (mCurrentDragBackRunnable != null) {
+            mCurrentDragBackRunnable.resume();
+            postOnAnimation(mCurrentDragBackRunnable);
+        }
+    }
+
+    /**
+     * @see #setDragViewToFinish(boolean)
+     */
+    private boolean canDragViewToFinish() {
+        return mDragViewToFinish && mEnableDragToFinish && mDragToFinishListener != null
+                && getScale() <= getMinimumScale();
+    }
+
+    /**
+     * Move and shrink the view itself with the finger. Only the view's render properties change,
+     * so neither the content nor the matrix is touched on the way.
+     */
+    private void dragView(float dx, float dy) {
+        if (!mViewDragActive) {
+            mViewDragActive = true;
+            mViewMoved = true;
+            mViewDragVelocityY = 0;
+            cancelViewSettle();
+        }
+        ViewCompat.setTranslationX(mImageView, ViewCompat.getTranslationX(mImageView) + dx);
+        ViewCompat.setTranslationY(mImageView, ViewCompat.getTranslationY(mImageView) + dy);
+        final float scale = getDraggedViewScale(getViewDragFraction());
+        ViewCompat.setScaleX(mImageView, scale);
+        ViewCompat.setScaleY(mImageView, scale);
+
+        // Touch events can arrive several times per frame, the listener hears once per frame
+        if (!mDragProgressPosted) {
+            mDragProgressPosted = true;
+            postOnAnimation(mDragProgressRunnable);
+        }
+
+        ViewParent parent = mImageView.getParent();
+        if (parent != null) {
+            parent.requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    /**
+     * Animate the dragged view either back into place, or on out of the bottom of its parent
+     * followed by {@link OnDragToFinishListener#onDismiss()}.
+     */
+    private void settleView(boolean dismiss) {
+        mViewDragActive = false;
+        cancelViewSettle();
+        // The settle animation reports the progress from its first frame on
+        cancelDragProgress();
+
+        final float startFraction = getViewDragFraction();
+        float translationX = 0, translationY = 0, scale = 1f;
+        int duration = mConfig.getDragBackDuration();
+        if (dismiss) {
+            final float currentY = ViewCompat.getTranslationY(mImageView);
+            final ViewParent parent = mImageView.getParent();
+            final int bottom = parent instanceof View ? ((View) parent).getHeight() : mImageView.getBottom();
+            translationX = ViewCompat.getTranslationX(mImageView);
+            translationY = Math.max(currentY, bottom - mImageView.getTop());
+            scale = DRAG_VIEW_MIN_SCALE;
+            if (mViewDragVelocityY > 0) {
+                // Keep going at about the speed it was released with
+                duration = Math.min(duration, (int) ((translationY - currentY) * 1000 / mViewDragVelocityY));
+            }
+        }
+
+        ViewCompat.animate(mImageView)
+                .translationX(translationX)
+                .translationY(translationY)
+                .scaleX(scale)
+                .scaleY(scale)
+                .setDuration(duration)
+                .setInterpolator(DRAG_BACK_INTERPOLATOR)
+                .start();
+        mCurrentViewSettleRunnable = new ViewSettleRunnable(startFraction, dismiss ? 1f : 0f, duration, dismiss);
+        startTimedAnimation(mCurrentViewSettleRunnable);
+    }
+
+    private void cancelViewSettle() {
+        if (mCurrentViewSettleRunnable != null) {
+            ViewCompat.animate(mImageView).cancel();
+            getFrameClock().removeFrameCallback(mCurrentViewSettleRunnable);
+            mCurrentViewSettleRunnable = null;
+        }
+    }
+
+    private void cancelDragProgress() {
+        if (mDragProgressPosted) {
+            mDragProgressPosted = false;
+            getFrameClock().removeFrameCallback(mDragProgressRunnable);
+        }
+    }
+
+    /**
+     * Put a dragged view straight back into place, without any callback.
+     */
+    private void restoreDraggedView() {
+        cancelViewSettle();
+        cancelDragProgress();
+        mViewDragActive = false;
+        if (mViewMoved) {
+            mViewMoved = false;
+            ViewCompat.setTranslationX(mImageView, 0);
+            ViewCompat.setTranslationY(mImageView, 0);
+            ViewCompat.setScaleX(mImageView, 1f);
+            ViewCompat.setScaleY(mImageView, 1f);
+        }
+    }
+
+    /**
+     * @return how far the view has been dragged towards finishing, from 0 to 1
+     */
+    private float getViewDragFraction() {
+        final float distance = mConfig.getDragToFinishDistance();
+        if (distance <= 0) {
+            return 1f;
+        }
+        return Math.min(1f, Math.max(0f, ViewCompat.getTranslationY(mImageView)) / distance);
+    }
+
+    private float getDraggedViewScale(float fraction) {
+        return 1f - (1f - DRAG_VIEW_MIN_SCALE) * fraction;
+    }
+
+    private void dispatchDragProgress(float fraction) {
+        if (mDragToFinishListener != null) {
+            mDragToFinishListener.onDragged(fraction);
+        }
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        saveViewportToCache();
+
+        // Nothing should keep running, or keep a reference to the view, while it is off screen.
+        // A fling only makes sense under the finger that started it, and layout animations are
+        // jumped to their end. Zoom and drag-back are parked and carry on when re-attached.
+        cancelFling();
+        endLayoutAnimation();
+        cancelIdleCheck();
+        cancelViewportSettled();
+        setLowQuality(false);
+        mTouching = false;
+        if (mCurrentViewSettleRunnable != null) {
+            if (mCurrentViewSettleRunnable.mDismiss) {
+                // Decided already, but there is nobody left to tell; reset() puts the view back
+                cancelViewSettle();
+                mDragToFinish = true;
+            } else {
+                restoreDraggedView();
+            }
+        }
+        if (mCurrentZoomRunnable != null) {
+            mCurrentZoomRunnable.park();
+            getFrameClock().removeFrameCallback(mCurrentZoomRunnable);
+        }
+        if (mCurrentDragBackRunnable != null) {
+            mCurrentDragBackRunnable.park();
+            getFrameClock().removeFrameCallback(mCurrentDragBackRunnable);
+        }
     }
 
     @Override
     public void onScale(float scaleFactor, float focusX, float focusY) {
-        if ((getScale() < mMaxScale || scaleFactor < 1f) && (getScale() > mMinScale || scaleFactor > 1f)) {
+        if ((getScale() < getMaximumScale() || scaleFactor < 1f) && (getScale() > getMinimumScale() || scaleFactor > 1f)) {
             if (mScaleChangeListener != null) {
                 mScaleChangeListener.onScaleChange(scaleFactor, focusX, focusY);
             }
@@ -370,6 +784,9 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             mDragToFinish = false;
             switch (ev.getAction()) {
                 case MotionEvent.ACTION_DOWN:
+                    ensureDetectors();
+                    mTouching = true;
+
                     ViewParent parent = v.getParent();
                     // First, disable the Parent from intercepting the touch
                     // event
@@ -380,29 +797,43 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     // If we're flinging, and the user presses down, cancel
                     // fling
                     cancelFling();
+
+                    // Catch a view on its way back, the next drag carries on from there
+                    if (mCurrentViewSettleRunnable != null && !mCurrentViewSettleRunnable.mDismiss) {
+                        cancelViewSettle();
+                    }
                     break;
 
                 case MotionEvent.ACTION_CANCEL:
                 case MotionEvent.ACTION_UP:
+                    mTouching = false;
                     // If the user has zoomed less than min scale, zoom back
                     // to min scale
-                    if (getScale() < mMinScale) {
+                    if (getScale() < getMinimumScale()) {
                         RectF rect = getDisplayRect();
                         if (rect != null) {
-                            v.post(new AnimatedZoomRunnable(getScale(), mMinScale,
-                                    rect.centerX(), rect.centerY()));
+                            startZoomAnimation(getScale(), getMinimumScale(),
+                                    rect.centerX(), rect.centerY());
                             handled = true;
                         }
                     }
                     break;
             }
 
+            // While the view itself is dragged its local coordinates move along with it, so
+            // the detectors are fed coordinates relative to its untransformed position instead
+            MotionEvent event = ev;
+            if (!mImageView.getMatrix().isIdentity()) {
+                event = MotionEvent.obtain(ev);
+                event.transform(mImageView.getMatrix());
+            }
+
             // Try the Scale/Drag detector
             if (mScaleDragDetector != null) {
                 boolean wasScaling = mScaleDragDetector.isScaling();
                 boolean wasDragging = mScaleDragDetector.isDragging();
 
-                handled = mScaleDragDetector.onTouchEvent(ev);
+                handled = mScaleDragDetector.onTouchEvent(event);
 
                 boolean didntScale = !wasScaling && !mScaleDragDetector.isScaling();
                 boolean didntDrag = !wasDragging && !mScaleDragDetector.isDragging();
@@ -411,10 +842,24 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             }
 
             // Check to see if the user double tapped
-            if (mGestureDetector != null && mGestureDetector.onTouchEvent(ev)) {
+            if (mGestureDetector != null && mGestureDetector.onTouchEvent(event)) {
                 handled = true;
             }
 
+            if (event != ev) {
+                event.recycle();
+            }
+
+            if (!mTouching && mViewMoved && mCurrentViewSettleRunnable == null) {
+                // Cancelled, or released without a drag end: put the view back
+                settleView(false);
+            }
+
+            if (!mTouching) {
+                // Any fling or zoom back has been started by now
+                scheduleIdleCheck();
+            }
+
         }
 
         return handled;
@@ -449,37 +894,50 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         }
         if(mDragToFinishListener != null && mEnableDragToFinish) {
             if(deltaY < 0) {
-                mDragToFinishListener.onDragged(Math.abs(deltaY) / mDragToFinishDistance);
+                mDragToFinishListener.onDragged(Math.abs(deltaY) / mConfig.getDragToFinishDistance());
             } else {
                 mDragToFinishListener.onDragged(0);
             }
         }
     }
 
+    /**
+     * Use the given settings. The same config can be shared by any number of attachers; the
+     * individual setters below swap in a modified copy.
+     *
+     * @param config the settings to use
+     */
+    public void setConfig(PhotoViewConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Config cannot be null");
+        }
+        mConfig = config;
+    }
+
+    public PhotoViewConfig getConfig() {
+        return mConfig;
+    }
+
     public void setAllowParentInterceptOnEdge(boolean allow) {
-        mAllowParentInterceptOnEdge = allow;
+        if (allow != mConfig.getAllowParentInterceptOnEdge()) {
+            mConfig = mConfig.buildUpon().setAllowParentInterceptOnEdge(allow).build();
+        }
     }
 
     public void setMinimumScale(float minimumScale) {
-        Util.checkZoomLevels(minimumScale, mMidScale, mMaxScale);
-        mMinScale = minimumScale;
+        mConfig = mConfig.buildUpon().setMinimumScale(minimumScale).build();
     }
 
     public void setMediumScale(float mediumScale) {
-        Util.checkZoomLevels(mMinScale, mediumScale, mMaxScale);
-        mMidScale = mediumScale;
+        mConfig = mConfig.buildUpon().setMediumScale(mediumScale).build();
     }
 
     public void setMaximumScale(float maximumScale) {
-        Util.checkZoomLevels(mMinScale, mMidScale, maximumScale);
-        mMaxScale = maximumScale;
+        mConfig = mConfig.buildUpon().setMaximumScale(maximumScale).build();
     }
 
     public void setScaleLevels(float minimumScale, float mediumScale, float maximumScale) {
-        Util.checkZoomLevels(minimumScale, mediumScale, maximumScale);
-        mMinScale = minimumScale;
-        mMidScale = mediumScale;
-        mMaxScale = maximumScale;
+        mConfig = mConfig.buildUpon().setScaleLevels(minimumScale, mediumScale, maximumScale).build();
     }
 
     public void setOnLongClickListener(OnLongClickListener listener) {
@@ -494,6 +952,33 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         mMatrixChangeListener = listener;
     }
 
+    /**
+     * Register a callback to be invoked when a fling or a zoom animation starts, with where it
+     * will come to rest, see {@link OnViewportPredictedListener}.
+     */
+    public void setOnViewportPredictedListener(OnViewportPredictedListener listener) {
+        mViewportPredictedListener = listener;
+    }
+
+    /**
+     * Register a callback to be invoked once the viewport comes to rest after it changed, see
+     * {@link OnViewportSettledListener}. The delay is set with {@link #setSettleDelay(int)}.
+     */
+    public void setOnViewportSettledListener(OnViewportSettledListener listener) {
+        mViewportSettledListener = listener;
+        if (listener == null) {
+            cancelViewportSettled();
+        }
+    }
+
+    /**
+     * @param milliseconds how long the viewport has to stay at rest before the
+     *                     {@link OnViewportSettledListener} is called
+     */
+    public void setSettleDelay(int milliseconds) {
+        mConfig = mConfig.buildUpon().setSettleDelay(milliseconds).build();
+    }
+
     public void setOnPhotoTapListener(OnPhotoTapListener listener) {
         mPhotoTapListener = listener;
     }
@@ -516,13 +1001,13 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     public void setScale(float scale, float focalX, float focalY,
                          boolean animate) {
         // Check to see if the scale is within bounds
-        if (scale < mMinScale || scale > mMaxScale) {
+        if (scale < getMinimumScale() || scale > getMaximumScale()) {
             throw new IllegalArgumentException("Scale must be within the range of minScale and maxScale");
         }
 
         if (animate) {
-            mImageView.post(new AnimatedZoomRunnable(getScale(), scale,
-                    focalX, focalY));
+            startZoomAnimation(getScale(), scale,
+                    focalX, focalY);
         } else {
             mSuppMatrix.setScale(scale, scale, focalX, focalY);
             checkAndDisplayMatrix();
@@ -535,7 +1020,55 @@ public class PhotoViewAttacher implements View.OnTouchListener,
      * @param interpolator the zoom interpolator
      */
     public void setZoomInterpolator(Interpolator interpolator) {
-        mInterpolator = interpolator;
+        mConfig = mConfig.buildUpon().setInterpolator(interpolator).build();
+    }
+
+    /**
+     * Draw with bitmap filtering turned off while the image is moving (dragged, pinched, flung or
+     * animated) and turn it back on on the first frame after all motion has stopped. Filtering
+     * is expensive on software and low-end pipelines and makes no visible difference on a moving
+     * image.
+     *
+     * @param adaptive whether to lower the quality during motion
+     */
+    public void setAdaptiveQuality(boolean adaptive) {
+        mAdaptiveQuality = adaptive;
+        if (!adaptive) {
+            setLowQuality(false);
+        }
+    }
+
+    public boolean isAdaptiveQuality() {
+        return mAdaptiveQuality;
+    }
+
+    /**
+     * Snap the displayed translation to whole device pixels whenever the image is shown axis
+     * aligned at an integer scale (e.g. 1:1), so it is drawn as a pixel copy rather than
+     * filtered, and fine detail does not shimmer while scrolling. Drags and flings keep their
+     * exact sub-pixel position internally.
+     *
+     * @param snap whether to snap
+     */
+    public void setPixelSnapping(boolean snap) {
+        if (mPixelSnapping != snap) {
+            mPixelSnapping = snap;
+            checkAndDisplayMatrix();
+        }
+    }
+
+    public boolean isPixelSnapping() {
+        return mPixelSnapping;
+    }
+
+    /**
+     * Set the clock zoom, fling and drag-back animations are timed and scheduled with. By default
+     * a clock driven by the display vsync is used.
+     *
+     * @param frameClock the clock to use, or null to use the default one
+     */
+    public void setFrameClock(FrameClock frameClock) {
+        mFrameClock = frameClock;
     }
 
     public void setScaleType(ScaleType scaleType) {
@@ -554,14 +1087,240 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         update();
     }
 
+    /**
+     * Start batching changes. Until the matching {@link #commit()}, calls that would recompute the
+     * base matrix or display a new matrix (changing the drawable, scale type, rotation, zoomable
+     * state or display matrix) only record that this is needed. Calls may be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Apply the changes made since {@link #beginUpdate()}, with at most one recomputation of the
+     * base matrix and one matrix pushed to the view. The matrix is only pushed if one of the
+     * changes would have pushed it on its own, as {@link #update()} runs through here too.
+     *
+     * @throws IllegalStateException if there is no matching {@link #beginUpdate()}
+     */
+    public void commit() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("commit() called without beginUpdate()");
+        }
+        if (--mUpdateDepth > 0) {
+            return;
+        }
+
+        final boolean pendingUpdate = mPendingUpdate;
+        final boolean pendingDisplay = mPendingDisplay;
+        if (!pendingUpdate && !pendingDisplay) {
+            return;
+        }
+
+        if (pendingUpdate) {
+            // Keep display deferred while the base matrix is rebuilt, then show the result once
+            mUpdateDepth++;
+            try {
+                performUpdate();
+            } finally {
+                mUpdateDepth--;
+            }
+        }
+        // Also set if rebuilding the base matrix wanted to display
+        final boolean display = mPendingDisplay;
+        mPendingUpdate = false;
+        mPendingDisplay = false;
+        if (display) {
+            checkAndDisplayMatrix();
+        }
+    }
+
+    /**
+     * If we are in between {@link #beginUpdate()} and {@link #commit()}, record that the matrix
+     * needs to be displayed on commit.
+     *
+     * @return true if displaying has been deferred
+     */
+    private boolean deferDisplay() {
+        if (mUpdateDepth > 0) {
+            mPendingDisplay = true;
+            return true;
+        }
+        return false;
+    }
+
     public void update() {
+        // A batch of one, so that changes made one by one end up just like batched ones
+        beginUpdate();
+        mPendingUpdate = true;
+        commit();
+    }
+
+    private void performUpdate() {
         if (mZoomEnabled) {
             // Update the base matrix using the current drawable
             updateBaseMatrix(mImageView.getDrawable());
+            if (mPendingRelayout) {
+                // ...and where the new base matrix puts the point relayout() kept
+                getDrawMatrix().mapPoints(mRelayoutPoint);
+                mSuppMatrix.postTranslate(mImageView.getWidth() / 2f - mRelayoutPoint[0],
+                        mImageView.getHeight() / 2f - mRelayoutPoint[1]);
+                checkAndDisplayMatrix();
+            }
+            applyPendingViewportState();
         } else {
             // Reset the Matrix...
             resetMatrix();
         }
+        mPendingRelayout = false;
+    }
+
+    /**
+     * Update the base matrix for new view bounds while keeping the user's zoom and pan: the point
+     * of the image which was in the centre of the old bounds is kept in the centre of the new
+     * ones, at the same scale and rotation. Only the bounds check is run again afterwards. Called
+     * whenever the view's size changes, and batched like {@link #update()}.
+     *
+     * @param oldWidth  the previous width of the view
+     * @param oldHeight the previous height of the view
+     */
+    public void relayout(int oldWidth, int oldHeight) {
+        if (oldWidth == mImageView.getWidth() && oldHeight == mImageView.getHeight()) {
+            // Only moved, the matrices are relative to the view so nothing changes
+            return;
+        }
+        final Drawable drawable = mImageView.getDrawable();
+        if (drawable == null || !mZoomEnabled || oldWidth <= 0 || oldHeight <= 0
+                || !getDrawMatrix().invert(mTempMatrix)) {
+            // First layout, or nothing worth preserving
+            update();
+            return;
+        }
+
+        if (!mPendingRelayout) {
+            // Image point under the old focal position, the first size of a batch counts
+            mRelayoutPoint[0] = oldWidth / 2f;
+            mRelayoutPoint[1] = oldHeight / 2f;
+            mTempMatrix.mapPoints(mRelayoutPoint);
+            mPendingRelayout = true;
+        }
+        update();
+    }
+
+    /**
+     * Set the identity of the image being shown. When a {@link ViewportCache} is set, the viewport
+     * of the previous image is remembered under its id, and a viewport remembered for the new id
+     * is restored as soon as the drawable is shown.
+     *
+     * @param imageId the id of the image, or null if unknown
+     */
+    public void setImageId(String imageId) {
+        if (imageId == null ? mImageId == null : imageId.equals(mImageId)) {
+            return;
+        }
+        saveViewportToCache();
+        mImageId = imageId;
+        mPendingViewportState = null;
+        if (mViewportCache != null && imageId != null) {
+            ViewportState state = mViewportCache.get(imageId);
+            if (state != null) {
+                setViewportState(state);
+            }
+        }
+    }
+
+    public String getImageId() {
+        return mImageId;
+    }
+
+    /**
+     * @param cache the cache to remember viewports per image id in, or null
+     */
+    public void setViewportCache(ViewportCache cache) {
+        mViewportCache = cache;
+    }
+
+    /**
+     * Get the current viewport in a form which survives size and resolution changes.
+     *
+     * @return the viewport, or null if there is no drawable or the view has not been laid out
+     */
+    public ViewportState getViewportState() {
+        if (mPendingViewportState != null) {
+            // Not shown yet, hand it on unchanged
+            return mPendingViewportState;
+        }
+        final Drawable drawable = mImageView.getDrawable();
+        final int width = mImageView.getWidth(), height = mImageView.getHeight();
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0
+                || width <= 0 || height <= 0 || !getDrawMatrix().invert(mTempMatrix)) {
+            return null;
+        }
+
+        mTempPoint[0] = width / 2f;
+        mTempPoint[1] = height / 2f;
+        mTempMatrix.mapPoints(mTempPoint);
+
+        mSuppMatrix.getValues(mMatrixValues);
+        final float rotation = (float) Math.toDegrees(Math.atan2(mMatrixValues[Matrix.MSKEW_Y],
+                mMatrixValues[Matrix.MSCALE_X]));
+
+        return new ViewportState(mImageId,
+                mTempPoint[0] / drawable.getIntrinsicWidth(),
+                mTempPoint[1] / drawable.getIntrinsicHeight(),
+                getScale(), rotation);
+    }
+
+    /**
+     * Show the given viewport. If there is no drawable yet, or the view has not been laid out, it
+     * is applied once it is. A state saved for another image id is ignored.
+     *
+     * @param state the viewport to show
+     */
+    public void setViewportState(ViewportState state) {
+        if (state == null) {
+            mPendingViewportState = null;
+            return;
+        }
+        if (state.getImageId() != null && !state.getImageId().equals(mImageId)) {
+            return;
+        }
+        mPendingViewportState = applyViewportState(state) ? null : state;
+    }
+
+    private boolean applyViewportState(ViewportState state) {
+        final Drawable drawable = mImageView.getDrawable();
+        final int width = mImageView.getWidth(), height = mImageView.getHeight();
+        if (!mZoomEnabled || drawable == null || width <= 0 || height <= 0) {
+            return false;
+        }
+
+        final float scale = Math.max(getMinimumScale(), Math.min(getMaximumScale(), state.getScale()));
+        mSuppMatrix.setRotate(state.getRotation());
+        mSuppMatrix.postScale(scale, scale);
+
+        // Bring the saved focal point of the image back to the centre
+        mTempPoint[0] = state.getFocusX() * drawable.getIntrinsicWidth();
+        mTempPoint[1] = state.getFocusY() * drawable.getIntrinsicHeight();
+        getDrawMatrix().mapPoints(mTempPoint);
+        mSuppMatrix.postTranslate(width / 2f - mTempPoint[0], height / 2f - mTempPoint[1]);
+        checkAndDisplayMatrix();
+        return true;
+    }
+
+    private void applyPendingViewportState() {
+        if (mPendingViewportState != null && applyViewportState(mPendingViewportState)) {
+            mPendingViewportState = null;
+        }
+    }
+
+    private void saveViewportToCache() {
+        if (mViewportCache != null && mImageId != null && mImageView != null) {
+            ViewportState state = getViewportState();
+            if (state != null) {
+                mViewportCache.put(mImageId, state);
+            }
+        }
     }
 
     /**
@@ -590,15 +1349,57 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         return mDrawMatrix;
     }
 
+    /**
+     * @return the matrix last pushed to the view, which is what is on screen
+     */
+    Matrix getDisplayedMatrix() {
+        return mDisplayedMatrix;
+    }
+
+    /**
+     * Feed the given scheduler the viewport from now on, or stop feeding one if null. Used by
+     * {@link PhotoView#setTileDecoder(TileDecoder)}.
+     */
+    void setTileScheduler(TileScheduler scheduler) {
+        mTileScheduler = scheduler;
+        updateTiles();
+    }
+
+    private void updateTiles() {
+        if (mTileScheduler != null && mDisplayedValid) {
+            mTileScheduler.setViewport(mDisplayedMatrix, getImageViewWidth(mImageView),
+                    getImageViewHeight(mImageView), mDisplayedDrawable);
+        }
+    }
+
+    /**
+     * Stop handing matrices to {@link ImageView#setImageMatrix(Matrix)} and only invalidate the
+     * view, which then draws with {@link #getDisplayedMatrix()} itself. Only for views which do
+     * so, i.e. {@link PhotoView#setDirectDraw(boolean)}.
+     */
+    void setDirectDraw(boolean directDraw) {
+        if (mDirectDraw == directDraw) {
+            return;
+        }
+        mDirectDraw = directDraw;
+        if (!directDraw) {
+            // Bring ImageView's own matrix up to date again
+            mImageView.setImageMatrix(mDisplayedMatrix);
+        }
+        mImageView.invalidate();
+    }
+
     public void setDragToFinishListener(int distance, OnDragToFinishListener listener) {
         if(distance < 0)
             return;
-        this.mDragToFinishDistance = distance;
+        if (distance != mConfig.getDragToFinishDistance()) {
+            mConfig = mConfig.buildUpon().setDragToFinishDistance(distance).build();
+        }
         this.mDragToFinishListener = listener;
     }
 
     public void setZoomTransitionDuration(int milliseconds) {
-        this.mZoomDuration = milliseconds;
+        mConfig = mConfig.buildUpon().setZoomDuration(milliseconds).build();
     }
 
     /**
@@ -618,23 +1419,160 @@ public class PhotoViewAttacher implements View.OnTouchListener,
      */
     private void resetMatrix() {
         mSuppMatrix.reset();
-        setRotationBy(mBaseRotation);
-        setImageViewMatrix(getDrawMatrix());
-        checkMatrixBounds();
+        mSuppMatrix.postRotate(mBaseRotation % 360);
+        checkAndDisplayMatrix();
     }
 
     private void setImageViewMatrix(Matrix matrix) {
-        mImageView.setImageMatrix(matrix);
+        if (deferDisplay()) {
+            return;
+        }
+        mCandidateMatrix.set(matrix);
+        if (mPixelSnapping) {
+            // Only the displayed copy is rounded, mSuppMatrix keeps the sub-pixel remainder
+            snapToPixels(mCandidateMatrix);
+        }
+        final Drawable drawable = mImageView.getDrawable();
+        if (mDisplayedValid && drawable == mDisplayedDrawable && isDisplayed(mCandidateMatrix)) {
+            // Nothing would visibly change: no invalidate, no listener callbacks
+            return;
+        }
+        if (mAdaptiveQuality && isInMotion()) {
+            setLowQuality(true);
+        }
+        mDisplayedMatrix.set(mCandidateMatrix);
+        mDisplayedValid = true;
+        mDisplayedDrawable = drawable;
+        mViewportChanged = true;
+        if (isInMotion()) {
+            cancelViewportSettled();
+        } else {
+            // e.g. setScale() without animation, or a new drawable
+            scheduleIdleCheck();
+        }
+        if (mDirectDraw) {
+            // The view concatenates mDisplayedMatrix itself when drawing
+            mImageView.invalidate();
+        } else {
+            mImageView.setImageMatrix(mDisplayedMatrix);
+        }
+        updateTiles();
 
         // Call MatrixChangedListener if needed
         if (mMatrixChangeListener != null) {
-            RectF displayRect = getDisplayRect(matrix);
+            RectF displayRect = getDisplayRect(mDisplayedMatrix);
             if (displayRect != null) {
                 mMatrixChangeListener.onMatrixChanged(displayRect);
             }
         }
     }
 
+    /**
+     * @return true if the given matrix puts every corner of the image within a sub-pixel distance
+     * of where the one on screen does. Affine matrices move no point of the image further than
+     * its corners, however large the image.
+     */
+    private boolean isDisplayed(Matrix matrix) {
+        final Drawable drawable = mImageView.getDrawable();
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            return matrix.equals(mDisplayedMatrix);
+        }
+        final float width = drawable.getIntrinsicWidth();
+        final float height = drawable.getIntrinsicHeight();
+        mCorners[0] = 0;
+        mCorners[1] = 0;
+        mCorners[2] = width;
+        mCorners[3] = 0;
+        mCorners[4] = 0;
+        mCorners[5] = height;
+        mCorners[6] = width;
+        mCorners[7] = height;
+        mDisplayedMatrix.mapPoints(mDisplayedCorners, mCorners);
+        matrix.mapPoints(mCorners);
+        for (int i = 0; i < 8; i++) {
+            if (Math.abs(mCorners[i] - mDisplayedCorners[i]) > NO_OP_PIXEL_EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Round the scale and translation of the given matrix to whole pixels if it maps bitmap pixels
+     * onto device pixels one to n, i.e. it is axis-aligned (rotated by a multiple of 90 degrees)
+     * with a scale within a hair of an integer. The image can then be drawn as a plain pixel copy
+     * instead of being resampled. The scale is rounded about the centre of the view, so what is
+     * in the middle stays put.
+     */
+    private void snapToPixels(Matrix matrix) {
+        matrix.getValues(mMatrixValues);
+        final float[] v = mMatrixValues;
+        if (v[Matrix.MPERSP_0] != 0 || v[Matrix.MPERSP_1] != 0) {
+            return;
+        }
+
+        // Which entry scales each axis, and the intrinsic units per bitmap pixel along the image
+        // axis it scales, as a density-scaled drawable has more or fewer units than pixels
+        final int indexX, indexY, zeroX, zeroY;
+        final float ratioX, ratioY;
+        if (Math.abs(v[Matrix.MSKEW_X]) < PIXEL_SNAP_EPSILON && Math.abs(v[Matrix.MSKEW_Y]) < PIXEL_SNAP_EPSILON) {
+            indexX = Matrix.MSCALE_X;
+            indexY = Matrix.MSCALE_Y;
+            zeroX = Matrix.MSKEW_X;
+            zeroY = Matrix.MSKEW_Y;
+            ratioX = getPixelRatio(true);
+            ratioY = getPixelRatio(false);
+        } else if (Math.abs(v[Matrix.MSCALE_X]) < PIXEL_SNAP_EPSILON && Math.abs(v[Matrix.MSCALE_Y]) < PIXEL_SNAP_EPSILON) {
+            indexX = Matrix.MSKEW_X;
+            indexY = Matrix.MSKEW_Y;
+            zeroX = Matrix.MSCALE_X;
+            zeroY = Matrix.MSCALE_Y;
+            ratioX = getPixelRatio(false);
+            ratioY = getPixelRatio(true);
+        } else {
+            return;
+        }
+        // Device pixels per bitmap pixel, which have to be whole
+        final float scaleX = v[indexX] * ratioX;
+        final float scaleY = v[indexY] * ratioY;
+        if (!isWholeScale(scaleX) || !isWholeScale(scaleY)) {
+            return;
+        }
+
+        // Snap the scale too, a scale of 1.0004 would still be resampled and filtered
+        final float factorX = Math.round(scaleX) / scaleX;
+        final float factorY = Math.round(scaleY) / scaleY;
+        final float centreX = getImageViewWidth(mImageView) / 2f;
+        final float centreY = getImageViewHeight(mImageView) / 2f;
+        v[indexX] *= factorX;
+        v[indexY] *= factorY;
+        v[zeroX] = 0;
+        v[zeroY] = 0;
+        v[Matrix.MTRANS_X] = Math.round(centreX - factorX * (centreX - v[Matrix.MTRANS_X]));
+        v[Matrix.MTRANS_Y] = Math.round(centreY - factorY * (centreY - v[Matrix.MTRANS_Y]));
+        matrix.setValues(v);
+    }
+
+    /**
+     * @return the drawable's intrinsic units per bitmap pixel along the given axis, 1 for
+     * drawables without a bitmap
+     */
+    private float getPixelRatio(boolean horizontal) {
+        final Drawable drawable = mImageView.getDrawable();
+        if (!(drawable instanceof BitmapDrawable) || ((BitmapDrawable) drawable).getBitmap() == null) {
+            return 1f;
+        }
+        final int pixels = horizontal ? ((BitmapDrawable) drawable).getBitmap().getWidth()
+                : ((BitmapDrawable) drawable).getBitmap().getHeight();
+        final int units = horizontal ? drawable.getIntrinsicWidth() : drawable.getIntrinsicHeight();
+        return pixels > 0 && units > 0 ? units / (float) pixels : 1f;
+    }
+
+    private static boolean isWholeScale(float scale) {
+        final float abs = Math.abs(scale);
+        return abs >= 1f - PIXEL_SNAP_EPSILON && Math.abs(abs - Math.round(abs)) < PIXEL_SNAP_EPSILON;
+    }
+
     /**
      * Helper method that simply checks the Matrix, and then displays the result
      */
@@ -647,6 +1585,10 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     private void checkAndDisplayMatrix(boolean ignoreCheck) {
+        if (deferDisplay()) {
+            // The bounds are checked against the final base matrix on commit
+            return;
+        }
         if(ignoreCheck || checkMatrixBounds())
             setImageViewMatrix(getDrawMatrix());
     }
@@ -742,7 +1684,6 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             }
 
             float ratioSrc = mSrcHeight * 1f / mSrcWidth;
-            //System.out.println("+++++" + srcW + "/" + srcH + "/" + ratioDrawable + "/" + ratioCurrent);
             if(srcH == 0 || srcW == 0) {
                 if (ratioDrawable > ratioCurrent) {
                     srcW = mSrcWidth;
@@ -758,8 +1699,6 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
             //TODO need check scale make sure it will not small than min value
             scale = 1 + (srcW / targetW-1)*(1-fraction);
-            //System.out.println(changeScale + "-------" + viewHeight + "/" + viewWidth);
-            //System.out.println(ratioDrawable + "/" + ratioCurrent + "###############" + scale + "/" + srcW + "/" + targetW + "/" + fraction);
             if(ratioCurrent > 0) {
                 if (ratioDrawable < ratioCurrent)
                     //translateX = -(scale - 1) * targetW / 2 + (viewWidth - mBigWidth) / 2;
@@ -769,12 +1708,6 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     translateY = (viewHeight - mBigHeight*scale)/2;
                 //translateY = 300;//(scale - 1) * viewHeight / 2;
             }
-//            System.out.println("-------------------___" + ratioDrawable + "/" + ratioCurrent);
-//            System.out.println("bitmap size:" + bitmapW + "/" + bitmapH + "--" + drawableWidth + "/" + drawableHeight);
-//            System.out.println(fraction + "___" + srcW + "/" + srcH + "---" + mSrcWidth + "/" + mSrcHeight);
-//            System.out.println(translateX + "/" + translateY + "++++" + (viewHeight - mBigHeight) / 2 + "//" + scale);
-//            System.out.println(currentW + "/" + currentH + "--" + viewWidth + "/" + viewHeight + "--" + targetW + "/" + targetH);
-            //System.out.println(ratioCurrent + "/" + ratioDrawable + "/" + ratioTarget + "++++++++" + translateX + "/" + translateY + "///" + currentW + "/" + currentH);
         }
 
             if ((int) mBaseRotation % 180 != 0) {
@@ -784,7 +1717,6 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     mTempSrc = new RectF(0, 0, drawableHeight, drawableWidth);
             }
 
-        //System.out.println("------------------resize:" + drawableWidth + "/" + drawableHeight + "--" + viewWidth + "/" + viewHeight);
 //        mTempDst = new RectF(0, 0, currentW, currentH);
         if(currentH > 0)
             mBaseMatrix.setRectToRect(mTempSrc, mTempDst, ScaleToFit.CENTER);
@@ -792,12 +1724,10 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             mBaseMatrix.postScale(scale, scale);
         }
         if(mBigWidth > 0 && currentW > 0) {
-////            System.out.println("~~~~~~~~~~~~~~~" + viewWidth + '/' + mBigWidth);
             mBaseMatrix.postTranslate(translateX, translateY);
         }
 
         if(currentH > 0) {
-            //System.out.println("---------------");
             resetMatrix();
         }
 
@@ -812,8 +1742,25 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             return false;
         }
 
+        mScrollEdge = getBoundsCorrection(rect, mBoundsDelta);
+
+        // Finally actually translate the matrix
+        mSuppMatrix.postTranslate(mBoundsDelta[0], mBoundsDelta[1]);
+        return true;
+    }
+
+    /**
+     * Work out how far the image has to move to be centred where it is smaller than the view and
+     * to leave no gap at the edges where it is larger.
+     *
+     * @param rect     the displayed image bounds
+     * @param outDelta the translation, x and y
+     * @return the edges of the image which are in view, one of the EDGE constants
+     */
+    private int getBoundsCorrection(RectF rect, float[] outDelta) {
         final float height = rect.height(), width = rect.width();
         float deltaX = 0, deltaY = 0;
+        final int edge;
 
         final int viewHeight = getImageViewHeight(mImageView);
         if (height <= viewHeight) {
@@ -827,20 +1774,20 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         final int viewWidth = getImageViewWidth(mImageView);
         if (width <= viewWidth) {
             deltaX = (viewWidth - width) / 2 - rect.left;
-            mScrollEdge = EDGE_BOTH;
+            edge = EDGE_BOTH;
         } else if (rect.left > 0) {
-            mScrollEdge = EDGE_LEFT;
+            edge = EDGE_LEFT;
             deltaX = -rect.left;
         } else if (rect.right < viewWidth) {
             deltaX = viewWidth - rect.right;
-            mScrollEdge = EDGE_RIGHT;
+            edge = EDGE_RIGHT;
         } else {
-            mScrollEdge = EDGE_NONE;
+            edge = EDGE_NONE;
         }
 
-        // Finally actually translate the matrix
-        mSuppMatrix.postTranslate(deltaX, deltaY);
-        return true;
+        outDelta[0] = deltaX;
+        outDelta[1] = deltaY;
+        return edge;
     }
 
     private void reverseFromDrag() {
@@ -875,52 +1822,27 @@ public class PhotoViewAttacher implements View.OnTouchListener,
             mScrollEdge = EDGE_NONE;
         }
 
-        if(deltaY <= -mDragToFinishDistance && mDragToFinishListener != null && mEnableDragToFinish) {
+        if(deltaY <= -mConfig.getDragToFinishDistance() && mDragToFinishListener != null && mEnableDragToFinish) {
             //doReverse();
             mDragToFinish = true;
             mDragToFinishListener.onDismiss();
-            System.out.println("+++++++++change mDragToFinish:" + mDragToFinish);
             return;
         }
 
-        final float targetX = deltaX;
-        final float targetY = deltaY;
-        mLastX = 0;
-        mLastY = 0;
-        ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
-        animator.setDuration(300);
-        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                float value = (float) animation.getAnimatedValue();
-
-                if(mDragToFinishListener != null && mEnableDragToFinish) {
-                    if(targetY < 0) {
-                        mDragToFinishListener.onDragged(Math.abs(targetY)*(1-value) / mDragToFinishDistance);
-                    } else {
-                        mDragToFinishListener.onDragged(0);
-                    }
-                }
-
-                float tx = targetX * value;
-                float ty = targetY * value;
-
-                mSuppMatrix.postTranslate(tx-mLastX, ty-mLastY);
-                mLastX = tx;
-                mLastY = ty;
-                setImageViewMatrix(getDrawMatrix());
-            }
-        });
-        animator.start();
+        cancelDragBack();
+        mCurrentDragBackRunnable = new DragBackRunnable(deltaX, deltaY);
+        startTimedAnimation(mCurrentDragBackRunnable);
     }
-    private float mLastX, mLastY;
 
     private int mBigWidth = 0;
     private int mBigHeight = 0;
     private int mSrcWidth=0;
     private int mSrcHeight=0;
     private static final int DURATION = 500;
+    // The size animations below lay out the view themselves, so layout changes are theirs
+    private boolean mRelayoutBlocked = false;
     public void doAnim() {
+        mRelayoutBlocked = true;
         final int width = mImageView.getWidth();
         final int height = mImageView.getHeight();
         if(mBigWidth == 0) {
@@ -949,10 +1871,11 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 updateBaseMatrix(mImageView.getDrawable(), true, animation.getAnimatedFraction());
             }
         });
-        animator.start();
+        startLayoutAnimation(animator);
     }
 
     public void doReverse() {
+        mRelayoutBlocked = true;
         if(mBigHeight == 0)
             return;
 
@@ -973,7 +1896,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 updateBaseMatrix(mImageView.getDrawable(), true, 1-animation.getAnimatedFraction());
             }
         });
-        animator.start();
+        startLayoutAnimation(animator);
     }
 
     /**
@@ -1030,7 +1953,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     checkMatrixBounds();
             }
         });
-        animator.start();
+        startLayoutAnimation(animator);
     }
 
     public void reverse(final int newSizeW, final int newSizeH, final int originW, final int originH) {
@@ -1081,7 +2004,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                     checkMatrixBounds();
             }
         });
-        animator.start();
+        startLayoutAnimation(animator);
     }
 
     private void updateMatrix(Drawable drawable, int sizeW, int sizeH, int originW, int originH, float fraction) {
@@ -1200,6 +2123,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
     }
 
     public void setOriginArgs(int fullSizeW, int fullSizeH, int srcW, int srcH, int bitmapW, int bitmapH) {
+        mRelayoutBlocked = true;
         this.mBigWidth = fullSizeW;
         this.mBigHeight = fullSizeH;
         this.mSrcWidth = srcW;
@@ -1227,6 +2151,26 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         this.mEnableDragToFinish = enable;
     }
 
+    /**
+     * Drag to finish by moving and shrinking the whole view through its translation and scale
+     * properties, instead of moving the image inside it. Property changes only update how the
+     * already drawn view is composited, so the drag and its settle animation stay smooth even
+     * when the UI thread is busy. On release the view is dismissed if it was flicked down faster
+     * than {@link PhotoViewConfig#getDragToFinishVelocity()}, or dragged further than the finish
+     * distance without being flicked back up; otherwise it returns into place.
+     * {@link OnDragToFinishListener#onDragged(float)} is called at most once per frame, and
+     * {@link OnDragToFinishListener#onDismiss()} once the view has left through the bottom of
+     * its parent.
+     *
+     * @param enable whether to drag the view rather than the image
+     */
+    public void setDragViewToFinish(boolean enable) {
+        if (!enable) {
+            restoreDraggedView();
+        }
+        mDragViewToFinish = enable;
+    }
+
     private int getImageViewWidth(ImageView imageView) {
         return imageView.getWidth() - imageView.getPaddingLeft() - imageView.getPaddingRight();
     }
@@ -1235,24 +2179,282 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         return imageView.getHeight() - imageView.getPaddingTop() - imageView.getPaddingBottom();
     }
 
+    FrameClock getFrameClock() {
+        if (mFrameClock == null) {
+            mFrameClock = Compat.getDefaultFrameClock(mImageView.getContext());
+        }
+        return mFrameClock;
+    }
+
+    private void postOnAnimation(Runnable runnable) {
+        getFrameClock().postFrameCallback(runnable);
+    }
+
+    /**
+     * @return true while the user is dragging or pinching, or a fling, zoom or drag-back
+     * animation is running
+     */
+    private boolean isInMotion() {
+        if (mCurrentFlingRunnable != null || mCurrentZoomRunnable != null
+                || mCurrentDragBackRunnable != null || mCurrentViewSettleRunnable != null) {
+            return true;
+        }
+        return mTouching && mScaleDragDetector != null
+                && (mScaleDragDetector.isDragging() || mScaleDragDetector.isScaling());
+    }
+
+    /**
+     * Check on the next frame whether all motion has stopped. Called whenever a motion may have
+     * ended: on touch up and when an animation finishes.
+     */
+    private void scheduleIdleCheck() {
+        if (!mIdleCheckPosted) {
+            mIdleCheckPosted = true;
+            postOnAnimation(mIdleCheckRunnable);
+        }
+    }
+
+    private void cancelIdleCheck() {
+        if (mIdleCheckPosted) {
+            mIdleCheckPosted = false;
+            getFrameClock().removeFrameCallback(mIdleCheckRunnable);
+        }
+    }
+
+    private void onIdle() {
+        setLowQuality(false);
+        if (mViewportChanged && mViewportSettledListener != null) {
+            cancelViewportSettled();
+            mSettledPosted = true;
+            mImageView.postDelayed(mSettledRunnable, mConfig.getSettleDelay());
+        }
+    }
+
+    private void cancelViewportSettled() {
+        if (mSettledPosted) {
+            mSettledPosted = false;
+            mImageView.removeCallbacks(mSettledRunnable);
+        }
+    }
+
+    private void dispatchViewportSettled() {
+        if (mViewportSettledListener == null || !mViewportChanged) {
+            return;
+        }
+        final RectF visibleRect = getVisibleRect(mDisplayedMatrix);
+        if (visibleRect != null) {
+            mViewportChanged = false;
+            mViewportSettledListener.onViewportSettled(visibleRect);
+        }
+    }
+
+    /**
+     * Tell the tile scheduler and the listener where the viewport is headed.
+     *
+     * @param owner  the animation heading there, which alone may clear the prediction again
+     * @param matrix the draw matrix the viewport will come to rest at
+     */
+    private void publishPredictedViewport(Object owner, Matrix matrix) {
+        mPredictionOwner = owner;
+        if (mTileScheduler != null) {
+            mTileScheduler.setPredictedViewport(matrix, getImageViewWidth(mImageView),
+                    getImageViewHeight(mImageView), mImageView.getDrawable());
+        }
+        if (mViewportPredictedListener != null) {
+            final RectF visibleRect = getVisibleRect(matrix);
+            if (visibleRect != null) {
+                mViewportPredictedListener.onViewportPredicted(visibleRect);
+            }
+        }
+    }
+
+    /**
+     * The viewport arrived where the given animation was headed, or went elsewhere. Does nothing
+     * if another animation has published a prediction since.
+     */
+    private void clearPredictedViewport(Object owner) {
+        if (owner == null || owner != mPredictionOwner) {
+            return;
+        }
+        mPredictionOwner = null;
+        if (mTileScheduler != null) {
+            mTileScheduler.setPredictedViewport(null, 0, 0, null);
+        }
+    }
+
+    /**
+     * @return the part of the Drawable which is on screen with the given matrix, in its intrinsic
+     * coordinates, or null if there is nothing to show
+     */
+    private RectF getVisibleRect(Matrix matrix) {
+        final Drawable drawable = mImageView.getDrawable();
+        if (drawable == null || !matrix.invert(mInverseMatrix)) {
+            return null;
+        }
+        mVisibleRect.set(0, 0, getImageViewWidth(mImageView), getImageViewHeight(mImageView));
+        mInverseMatrix.mapRect(mVisibleRect);
+        if (!mVisibleRect.intersect(0, 0, drawable.getIntrinsicWidth(),
+                drawable.getIntrinsicHeight())) {
+            return null;
+        }
+        return mVisibleRect;
+    }
+
+    private void setLowQuality(boolean lowQuality) {
+        if (lowQuality == mLowQuality) {
+            return;
+        }
+        if (lowQuality) {
+            final Drawable drawable = mImageView.getDrawable();
+            if (drawable == null) {
+                return;
+            }
+            final boolean bitmap = drawable instanceof BitmapDrawable;
+            if (!bitmap && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                // Its filtering can not be read back, so it could not be put back as it was
+                return;
+            }
+            // Drawables of the same resource share their paint through the constant state, so
+            // only ever change our own copy
+            mLowQualityDrawable = drawable.mutate();
+            mFilterWasEnabled = bitmap
+                    ? ((BitmapDrawable) mLowQualityDrawable).getPaint().isFilterBitmap()
+                    : isFilterBitmap(mLowQualityDrawable);
+            mLowQualityDrawable.setFilterBitmap(false);
+        } else if (mLowQualityDrawable != null) {
+            mLowQualityDrawable.setFilterBitmap(mFilterWasEnabled);
+            mLowQualityDrawable = null;
+            mImageView.invalidate();
+        }
+        mLowQuality = lowQuality;
+    }
+
+    @TargetApi(23)
+    private static boolean isFilterBitmap(Drawable drawable) {
+        return drawable.isFilterBitmap();
+    }
+
+    private void startTimedAnimation(TimedRunnable runnable) {
+        if (ViewCompat.isAttachedToWindow(mImageView)) {
+            postOnAnimation(runnable);
+        } else {
+            // Wait for onViewAttachedToWindow() before running any frame
+            runnable.park();
+        }
+    }
+
+    private void startLayoutAnimation(ValueAnimator animator) {
+        endLayoutAnimation();
+        mLayoutAnimator = animator;
+        animator.start();
+    }
+
+    private void endLayoutAnimation() {
+        if (mLayoutAnimator != null) {
+            ValueAnimator animator = mLayoutAnimator;
+            mLayoutAnimator = null;
+            animator.end();
+        }
+    }
+
     private void cancelFling() {
         if (mCurrentFlingRunnable != null) {
             mCurrentFlingRunnable.cancelFling();
+            getFrameClock().removeFrameCallback(mCurrentFlingRunnable);
+            clearPredictedViewport(mCurrentFlingRunnable);
             mCurrentFlingRunnable = null;
         }
     }
 
-    private class AnimatedZoomRunnable implements Runnable {
+    private void startZoomAnimation(float currentZoom, float targetZoom, float focalX, float focalY) {
+        cancelZoom();
+        mCurrentZoomRunnable = new AnimatedZoomRunnable(currentZoom, targetZoom, focalX, focalY);
+        predictZoom(mCurrentZoomRunnable, targetZoom, focalX, focalY);
+        startTimedAnimation(mCurrentZoomRunnable);
+    }
+
+    /**
+     * Publish where a zoom animation will end: the current matrix scaled to the target around
+     * the focal point, then moved within bounds once as the last frame would be.
+     */
+    private void predictZoom(AnimatedZoomRunnable runnable, float targetZoom, float focalX, float focalY) {
+        if (mTileScheduler == null && mViewportPredictedListener == null) {
+            return;
+        }
+        final float deltaScale = targetZoom / getScale();
+        mPredictedMatrix.set(getDrawMatrix());
+        mPredictedMatrix.postScale(deltaScale, deltaScale, focalX, focalY);
+        final RectF rect = getDisplayRect(mPredictedMatrix);
+        if (rect == null) {
+            return;
+        }
+        getBoundsCorrection(rect, mBoundsDelta);
+        mPredictedMatrix.postTranslate(mBoundsDelta[0], mBoundsDelta[1]);
+        publishPredictedViewport(runnable, mPredictedMatrix);
+    }
+
+    private void cancelZoom() {
+        if (mCurrentZoomRunnable != null) {
+            getFrameClock().removeFrameCallback(mCurrentZoomRunnable);
+            clearPredictedViewport(mCurrentZoomRunnable);
+            mCurrentZoomRunnable = null;
+        }
+    }
+
+    private void cancelDragBack() {
+        if (mCurrentDragBackRunnable != null) {
+            getFrameClock().removeFrameCallback(mCurrentDragBackRunnable);
+            mCurrentDragBackRunnable = null;
+        }
+    }
+
+    /**
+     * A runnable animating over a fixed span of {@link FrameClock} time, which can be parked while
+     * the view is detached and resumed where it left off.
+     */
+    private abstract class TimedRunnable implements Runnable {
+
+        // Taken on the first frame, as the clock only knows the time of a frame while producing it
+        private long mStartTime = -1;
+        private long mParkedElapsed = -1;
+
+        void park() {
+            if (mStartTime >= 0 && mParkedElapsed < 0) {
+                mParkedElapsed = getFrameClock().getFrameTimeNanos() - mStartTime;
+            }
+        }
+
+        void resume() {
+            if (mParkedElapsed >= 0) {
+                mStartTime = getFrameClock().getFrameTimeNanos() - mParkedElapsed;
+                mParkedElapsed = -1;
+            }
+        }
+
+        float interpolate(int duration, Interpolator interpolator) {
+            final long frameTime = getFrameClock().getFrameTimeNanos();
+            if (mStartTime < 0) {
+                mStartTime = frameTime;
+            }
+            if (duration <= 0) {
+                return 1f;
+            }
+            float t = (frameTime - mStartTime) / (duration * NANOS_PER_MILLI);
+            t = Math.max(0f, Math.min(1f, t));
+            t = interpolator.getInterpolation(t);
+            return t;
+        }
+    }
+
+    private class AnimatedZoomRunnable extends TimedRunnable {
 
         private final float mFocalX, mFocalY;
-        private final long mStartTime;
         private final float mZoomStart, mZoomEnd;
 
         public AnimatedZoomRunnable(final float currentZoom, final float targetZoom,
                                     final float focalX, final float focalY) {
             mFocalX = focalX;
             mFocalY = focalY;
-            mStartTime = System.currentTimeMillis();
             mZoomStart = currentZoom;
             mZoomEnd = targetZoom;
         }
@@ -1260,7 +2462,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
         @Override
         public void run() {
 
-            float t = interpolate();
+            float t = interpolate(mConfig.getZoomDuration(), mConfig.getInterpolator());
             float scale = mZoomStart + t * (mZoomEnd - mZoomStart);
             float deltaScale = scale / getScale();
 
@@ -1268,15 +2470,90 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
             // We haven't hit our target scale yet, so post ourselves again
             if (t < 1f) {
-                Compat.postOnAnimation(mImageView, this);
+                postOnAnimation(this);
+            } else if (mCurrentZoomRunnable == this) {
+                mCurrentZoomRunnable = null;
+                clearPredictedViewport(this);
+                scheduleIdleCheck();
             }
         }
+    }
 
-        private float interpolate() {
-            float t = 1f * (System.currentTimeMillis() - mStartTime) / mZoomDuration;
-            t = Math.min(1f, t);
-            t = mInterpolator.getInterpolation(t);
-            return t;
+    private class DragBackRunnable extends TimedRunnable {
+
+        private final float mTargetX, mTargetY;
+        private float mLastX, mLastY;
+
+        public DragBackRunnable(final float targetX, final float targetY) {
+            mTargetX = targetX;
+            mTargetY = targetY;
+        }
+
+        @Override
+        public void run() {
+            float t = interpolate(mConfig.getDragBackDuration(), DRAG_BACK_INTERPOLATOR);
+
+            if (mDragToFinishListener != null && mEnableDragToFinish) {
+                if (mTargetY < 0) {
+                    mDragToFinishListener.onDragged(Math.abs(mTargetY) * (1 - t) / mConfig.getDragToFinishDistance());
+                } else {
+                    mDragToFinishListener.onDragged(0);
+                }
+            }
+
+            float tx = mTargetX * t;
+            float ty = mTargetY * t;
+
+            mSuppMatrix.postTranslate(tx - mLastX, ty - mLastY);
+            mLastX = tx;
+            mLastY = ty;
+            setImageViewMatrix(getDrawMatrix());
+
+            if (t < 1f) {
+                postOnAnimation(this);
+            } else if (mCurrentDragBackRunnable == this) {
+                mCurrentDragBackRunnable = null;
+                scheduleIdleCheck();
+            }
+        }
+    }
+
+    private class ViewSettleRunnable extends TimedRunnable {
+
+        private final float mStartFraction, mEndFraction;
+        private final int mDuration;
+        private final boolean mDismiss;
+
+        /**
+         * Follows the view property animation started alongside it, to report its progress and
+         * finish it off.
+         */
+        public ViewSettleRunnable(float startFraction, float endFraction, int duration, boolean dismiss) {
+            mStartFraction = startFraction;
+            mEndFraction = endFraction;
+            mDuration = duration;
+            mDismiss = dismiss;
+        }
+
+        @Override
+        public void run() {
+            float t = interpolate(mDuration, DRAG_BACK_INTERPOLATOR);
+            dispatchDragProgress(mStartFraction + t * (mEndFraction - mStartFraction));
+
+            if (t < 1f) {
+                postOnAnimation(this);
+            } else if (mCurrentViewSettleRunnable == this) {
+                mCurrentViewSettleRunnable = null;
+                if (mDismiss) {
+                    mDragToFinish = true;
+                    if (mDragToFinishListener != null) {
+                        mDragToFinishListener.onDismiss();
+                    }
+                } else {
+                    mViewMoved = false;
+                }
+                scheduleIdleCheck();
+            }
         }
     }
 
@@ -1284,6 +2561,7 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
         private final OverScroller mScroller;
         private int mCurrentX, mCurrentY;
+        private int mMinX, mMaxX, mMinY, mMaxY;
 
         public FlingRunnable(Context context) {
             mScroller = new OverScroller(context);
@@ -1320,17 +2598,32 @@ public class PhotoViewAttacher implements View.OnTouchListener,
 
             mCurrentX = startX;
             mCurrentY = startY;
+            mMinX = minX;
+            mMaxX = maxX;
+            mMinY = minY;
+            mMaxY = maxY;
 
             // If we actually can move, fling the scroller
             if (startX != maxX || startY != maxY) {
                 mScroller.fling(startX, startY, velocityX, velocityY, minX,
                         maxX, minY, maxY, 0, 0);
+
+                // The scroller knows where it will stop before the first frame is drawn
+                mPredictedMatrix.set(getDrawMatrix());
+                mPredictedMatrix.postTranslate(startX - mScroller.getFinalX(),
+                        startY - mScroller.getFinalY());
+                publishPredictedViewport(this, mPredictedMatrix);
             }
         }
 
         @Override
         public void run() {
             if (mScroller.isFinished()) {
+                if (mCurrentFlingRunnable == this) {
+                    mCurrentFlingRunnable = null;
+                    clearPredictedViewport(this);
+                    scheduleIdleCheck();
+                }
                 return; // remaining post that should not be handled
             }
 
@@ -1339,6 +2632,15 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 final int newX = mScroller.getCurrX();
                 final int newY = mScroller.getCurrY();
 
+                if (newX == mCurrentX && newY == mCurrentY && isPinned(newX, newY)) {
+                    // Stuck against the bounds on both axes, nothing left to animate
+                    mScroller.forceFinished(true);
+                    mCurrentFlingRunnable = null;
+                    clearPredictedViewport(this);
+                    scheduleIdleCheck();
+                    return;
+                }
+
                 mSuppMatrix.postTranslate(mCurrentX - newX, mCurrentY - newY);
                 setImageViewMatrix(getDrawMatrix());
 
@@ -1346,8 +2648,12 @@ public class PhotoViewAttacher implements View.OnTouchListener,
                 mCurrentY = newY;
 
                 // Post On animation
-                Compat.postOnAnimation(mImageView, this);
+                postOnAnimation(this);
             }
         }
+
+        private boolean isPinned(int x, int y) {
+            return (x == mMinX || x == mMaxX) && (y == mMinY || y == mMaxY);
+        }
     }
 }
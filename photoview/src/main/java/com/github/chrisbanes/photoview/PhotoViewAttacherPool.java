@@ -0,0 +1,67 @@
+package com.github.chrisbanes.photoview;
+
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+
+/**
+ * A small pool of {@link PhotoViewAttacher}s, so that screens which keep creating and destroying
+ * {@link PhotoView}s (pager pages, grid cells) reuse gesture detectors, scrollers and matrices
+ * instead of allocating new ones for every view.
+ * <p>
+ * Attachers keep the {@link android.content.Context} of the first view they were created for, so
+ * a pool should be scoped to a single screen and not outlive it. Must only be used from the UI
+ * thread.
+ */
+public class PhotoViewAttacherPool {
+
+    private final int mMaxSize;
+    private final ArrayList<PhotoViewAttacher> mPool;
+
+    /**
+     * @param maxSize the maximum number of idle attachers kept around
+     */
+    public PhotoViewAttacherPool(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Pool size cannot be negative");
+        }
+        mMaxSize = maxSize;
+        mPool = new ArrayList<PhotoViewAttacher>(maxSize);
+    }
+
+    /**
+     * Get an attacher for the given view, reusing an idle one when possible.
+     *
+     * @param imageView the view to attach to
+     * @return an attacher bound to {@code imageView}
+     */
+    public PhotoViewAttacher acquire(ImageView imageView) {
+        final int size = mPool.size();
+        if (size == 0 || imageView.isInEditMode()) {
+            return new PhotoViewAttacher(imageView);
+        }
+        PhotoViewAttacher attacher = mPool.remove(size - 1);
+        attacher.bind(imageView);
+        return attacher;
+    }
+
+    /**
+     * Give an attacher back to the pool. It is detached from its view, and its listeners and
+     * settings are reset. Neither the attacher nor its former view may be used afterwards.
+     *
+     * @param attacher the attacher to release
+     */
+    public void release(PhotoViewAttacher attacher) {
+        attacher.unbind();
+        if (mPool.size() < mMaxSize && !mPool.contains(attacher)) {
+            mPool.add(attacher);
+        }
+    }
+
+    /**
+     * Drop every idle attacher.
+     */
+    public void clear() {
+        mPool.clear();
+    }
+}
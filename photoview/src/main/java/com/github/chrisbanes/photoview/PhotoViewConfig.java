@@ -0,0 +1,207 @@
+package com.github.chrisbanes.photoview;
+
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Immutable set of settings for a {@link PhotoViewAttacher}: scale levels, animation durations,
+ * the zoom interpolator and drag behaviour. Being immutable, one instance can be shared by every
+ * {@link PhotoView} of a gallery; changing a single setting on an attacher swaps in a copy.
+ */
+public final class PhotoViewConfig {
+
+    static final float DEFAULT_MAX_SCALE = 3.0f;
+    static final float DEFAULT_MID_SCALE = 1.75f;
+    static final float DEFAULT_MIN_SCALE = 1.0f;
+    static final int DEFAULT_ZOOM_DURATION = 200;
+    static final int DEFAULT_DRAG_BACK_DURATION = 300;
+    static final int DEFAULT_DRAG_TO_FINISH_DISTANCE = 500;
+    static final int DEFAULT_DRAG_TO_FINISH_VELOCITY = 1500;
+    static final int DEFAULT_SETTLE_DELAY = 150;
+
+    /**
+     * The settings attachers start with.
+     */
+    public static final PhotoViewConfig DEFAULT = new Builder().build();
+
+    private final float mMinScale;
+    private final float mMidScale;
+    private final float mMaxScale;
+    private final int mZoomDuration;
+    private final int mDragBackDuration;
+    private final Interpolator mInterpolator;
+    private final int mDragToFinishDistance;
+    private final int mDragToFinishVelocity;
+    private final boolean mAllowParentInterceptOnEdge;
+    private final int mSettleDelay;
+
+    private PhotoViewConfig(Builder builder) {
+        mMinScale = builder.mMinScale;
+        mMidScale = builder.mMidScale;
+        mMaxScale = builder.mMaxScale;
+        mZoomDuration = builder.mZoomDuration;
+        mDragBackDuration = builder.mDragBackDuration;
+        mInterpolator = builder.mInterpolator;
+        mDragToFinishDistance = builder.mDragToFinishDistance;
+        mDragToFinishVelocity = builder.mDragToFinishVelocity;
+        mAllowParentInterceptOnEdge = builder.mAllowParentInterceptOnEdge;
+        mSettleDelay = builder.mSettleDelay;
+    }
+
+    public float getMinimumScale() {
+        return mMinScale;
+    }
+
+    public float getMediumScale() {
+        return mMidScale;
+    }
+
+    public float getMaximumScale() {
+        return mMaxScale;
+    }
+
+    public int getZoomDuration() {
+        return mZoomDuration;
+    }
+
+    public int getDragBackDuration() {
+        return mDragBackDuration;
+    }
+
+    public Interpolator getInterpolator() {
+        return mInterpolator;
+    }
+
+    public int getDragToFinishDistance() {
+        return mDragToFinishDistance;
+    }
+
+    public int getDragToFinishVelocity() {
+        return mDragToFinishVelocity;
+    }
+
+    public boolean getAllowParentInterceptOnEdge() {
+        return mAllowParentInterceptOnEdge;
+    }
+
+    public int getSettleDelay() {
+        return mSettleDelay;
+    }
+
+    /**
+     * @return a builder initialised with the settings of this config
+     */
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    public static final class Builder {
+
+        private float mMinScale = DEFAULT_MIN_SCALE;
+        private float mMidScale = DEFAULT_MID_SCALE;
+        private float mMaxScale = DEFAULT_MAX_SCALE;
+        private int mZoomDuration = DEFAULT_ZOOM_DURATION;
+        private int mDragBackDuration = DEFAULT_DRAG_BACK_DURATION;
+        private Interpolator mInterpolator;
+        private int mDragToFinishDistance = DEFAULT_DRAG_TO_FINISH_DISTANCE;
+        private int mDragToFinishVelocity = DEFAULT_DRAG_TO_FINISH_VELOCITY;
+        private boolean mAllowParentInterceptOnEdge = true;
+        private int mSettleDelay = DEFAULT_SETTLE_DELAY;
+
+        public Builder() {
+        }
+
+        Builder(PhotoViewConfig config) {
+            mMinScale = config.mMinScale;
+            mMidScale = config.mMidScale;
+            mMaxScale = config.mMaxScale;
+            mZoomDuration = config.mZoomDuration;
+            mDragBackDuration = config.mDragBackDuration;
+            mInterpolator = config.mInterpolator;
+            mDragToFinishDistance = config.mDragToFinishDistance;
+            mDragToFinishVelocity = config.mDragToFinishVelocity;
+            mAllowParentInterceptOnEdge = config.mAllowParentInterceptOnEdge;
+            mSettleDelay = config.mSettleDelay;
+        }
+
+        public Builder setScaleLevels(float minimumScale, float mediumScale, float maximumScale) {
+            mMinScale = minimumScale;
+            mMidScale = mediumScale;
+            mMaxScale = maximumScale;
+            return this;
+        }
+
+        public Builder setMinimumScale(float minimumScale) {
+            mMinScale = minimumScale;
+            return this;
+        }
+
+        public Builder setMediumScale(float mediumScale) {
+            mMidScale = mediumScale;
+            return this;
+        }
+
+        public Builder setMaximumScale(float maximumScale) {
+            mMaxScale = maximumScale;
+            return this;
+        }
+
+        public Builder setZoomDuration(int milliseconds) {
+            mZoomDuration = milliseconds;
+            return this;
+        }
+
+        public Builder setDragBackDuration(int milliseconds) {
+            mDragBackDuration = milliseconds;
+            return this;
+        }
+
+        public Builder setInterpolator(Interpolator interpolator) {
+            mInterpolator = interpolator;
+            return this;
+        }
+
+        public Builder setDragToFinishDistance(int distance) {
+            mDragToFinishDistance = distance;
+            return this;
+        }
+
+        /**
+         * @param pixelsPerSecond the downward release velocity above which a drag to finish
+         *                        dismisses even if it is shorter than the finish distance. Only
+         *                        used when the view itself is dragged, see
+         *                        {@link PhotoViewAttacher#setDragViewToFinish(boolean)}
+         */
+        public Builder setDragToFinishVelocity(int pixelsPerSecond) {
+            mDragToFinishVelocity = pixelsPerSecond;
+            return this;
+        }
+
+        public Builder setAllowParentInterceptOnEdge(boolean allow) {
+            mAllowParentInterceptOnEdge = allow;
+            return this;
+        }
+
+        /**
+         * @param milliseconds how long the viewport has to stay at rest before
+         *                     {@link OnViewportSettledListener} is called
+         */
+        public Builder setSettleDelay(int milliseconds) {
+            mSettleDelay = milliseconds;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the scale levels are not in ascending order
+         */
+        public PhotoViewConfig build() {
+            Util.checkZoomLevels(mMinScale, mMidScale, mMaxScale);
+            if (mInterpolator == null) {
+                // Interpolators are stateless, so the default one is shared by every config
+                mInterpolator = DEFAULT != null
+                        ? DEFAULT.mInterpolator : new AccelerateDecelerateInterpolator();
+            }
+            return new PhotoViewConfig(this);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Rect;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the bitmaps of all {@link PhotoView}s of the process in check. Once installed, it tracks
+ * every PhotoView which shows an image, and when the system reports memory pressure it lets go
+ * of the images of the views which are not visible, the ones furthest from the screen first:
+ * <ul>
+ * <li>moderate pressure halves their resolution,</li>
+ * <li>low memory releases the furthest half of them and halves the rest,</li>
+ * <li>critical pressure, or the app going to the background, releases all of them.</li>
+ * </ul>
+ * A view gets its image back just before it is drawn visibly again, with its zoom and pan kept.
+ * That needs an image set by resource or URI, or an {@link ImageRestorer}. A
+ * {@link SharedBitmap} without either is only downsampled, and comes back from its cache if it
+ * is still there; any other image is left alone.
+ */
+public final class PhotoViewMemoryGovernor implements ComponentCallbacks2 {
+
+    private static PhotoViewMemoryGovernor sInstance;
+
+    private final WeakHashMap<PhotoView, Boolean> mViews = new WeakHashMap<PhotoView, Boolean>();
+    private final Rect mTempRect = new Rect();
+    private final int[] mTempLocation = new int[2];
+
+    private PhotoViewMemoryGovernor() {
+    }
+
+    /**
+     * Install the governor for this process, e.g. in Application#onCreate(). PhotoViews are
+     * tracked from the next time their image is set.
+     *
+     * @return the governor
+     */
+    public static PhotoViewMemoryGovernor install(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhotoViewMemoryGovernor();
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the installed governor, or null
+     */
+    static PhotoViewMemoryGovernor getInstance() {
+        return sInstance;
+    }
+
+    void track(PhotoView view) {
+        mViews.put(view, Boolean.TRUE);
+    }
+
+    void untrack(PhotoView view) {
+        mViews.remove(view);
+    }
+
+    /**
+     * @return the bytes held by the images of all tracked views
+     */
+    public long getTrackedBytes() {
+        long bytes = 0;
+        for (PhotoView view : mViews.keySet()) {
+            bytes += view.getImageByteCount();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Let go of images as for the given {@link ComponentCallbacks2} trim level. Called by the
+     * system, but can also be called by apps which know better when memory is tight.
+     */
+    public void trim(int level) {
+        // Images which could not be restored earlier get another go once they are drawn
+        for (PhotoView view : mViews.keySet()) {
+            view.retryRestore();
+        }
+        if (level < TRIM_MEMORY_RUNNING_MODERATE) {
+            return;
+        }
+        final ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        long totalBytes = 0;
+        for (PhotoView view : mViews.keySet()) {
+            if (view.getDrawable() == null || isVisible(view)) {
+                continue;
+            }
+            final Candidate candidate = new Candidate(view, getDistance(view), view.getImageByteCount());
+            candidates.add(candidate);
+            totalBytes += candidate.mBytes;
+        }
+        Collections.sort(candidates, FURTHEST_FIRST);
+
+        long released = 0;
+        for (int i = 0, size = candidates.size(); i < size; i++) {
+            final Candidate candidate = candidates.get(i);
+            final boolean release = level >= TRIM_MEMORY_RUNNING_CRITICAL
+                    || (level >= TRIM_MEMORY_RUNNING_LOW && released < totalBytes / 2);
+            if (release && candidate.mView.releaseImage(false)) {
+                released += candidate.mBytes;
+            } else {
+                candidate.mView.releaseImage(true);
+            }
+        }
+    }
+
+    /**
+     * @return true if any part of the view is on screen
+     */
+    boolean isVisible(View view) {
+        return view.isShown() && view.getWindowVisibility() == View.VISIBLE
+                && view.getGlobalVisibleRect(mTempRect);
+    }
+
+    /**
+     * @return how far the centre of the view is from the centre of its window
+     */
+    private float getDistance(View view) {
+        if (view.getWindowToken() == null) {
+            return Float.MAX_VALUE;
+        }
+        final View root = view.getRootView();
+        view.getLocationInWindow(mTempLocation);
+        final float dx = mTempLocation[0] + view.getWidth() / 2f - root.getWidth() / 2f;
+        final float dy = mTempLocation[1] + view.getHeight() / 2f - root.getHeight() / 2f;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static final Comparator<Candidate> FURTHEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate lhs, Candidate rhs) {
+            return Float.compare(rhs.mDistance, lhs.mDistance);
+        }
+    };
+
+    private static class Candidate {
+
+        final PhotoView mView;
+        final float mDistance;
+        final int mBytes;
+
+        Candidate(PhotoView view, float distance, int bytes) {
+            mView = view;
+            mDistance = distance;
+            mBytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.chrisbanes.photoview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+/**
+ * Adapter for a {@link PhotoViewRecyclerPager}. It creates one full page {@link PhotoView} per
+ * view holder. Holders are recycled together with their attachers, so a gallery of any size only
+ * ever creates the few views that fit on screen plus the recycled view pool. Recycled pages
+ * drop their image and are reset; with a {@link ViewportCache} their zoom is remembered per
+ * image id.
+ */
+public abstract class PhotoViewPagerAdapter
+        extends RecyclerView.Adapter<PhotoViewPagerAdapter.PageHolder> {
+
+    private ViewportCache mViewportCache;
+
+    /**
+     * @param cache the cache to remember the zoom and pan of each page in, or null
+     */
+    public void setViewportCache(ViewportCache cache) {
+        mViewportCache = cache;
+    }
+
+    @Override
+    public final PageHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        PhotoView photoView = new PhotoView(parent.getContext());
+        photoView.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        onCreatePhotoView(photoView);
+        return new PageHolder(photoView);
+    }
+
+    @Override
+    public final void onBindViewHolder(PageHolder holder, int position) {
+        final PhotoView photoView = holder.photoView;
+        photoView.setViewportCache(mViewportCache);
+        photoView.setImageId(getImageId(position));
+        onBindPhotoView(photoView, position);
+    }
+
+    @Override
+    public void onViewRecycled(PageHolder holder) {
+        // Saves the viewport and lets go of the image while the view waits in the pool
+        holder.photoView.rebind(null);
+    }
+
+    /**
+     * Called once for every new page view, to apply settings shared by all pages.
+     */
+    protected void onCreatePhotoView(PhotoView photoView) {
+    }
+
+    /**
+     * Show the image of the given page, e.g. with {@link PhotoView#setImageBitmap}.
+     */
+    protected abstract void onBindPhotoView(PhotoView photoView, int position);
+
+    /**
+     * @return the identity of the image at the given position, see
+     * {@link PhotoView#setImageId(String)}. Defaults to the position.
+     */
+    protected String getImageId(int position) {
+        return String.valueOf(position);
+    }
+
+    public static class PageHolder extends RecyclerView.ViewHolder {
+
+        public final PhotoView photoView;
+
+        PageHolder(PhotoView photoView) {
+            super(photoView);
+            this.photoView = photoView;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.PagerSnapHelper;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * A horizontal pager of {@link PhotoView}s built on {@link RecyclerView}, to be used with a
+ * {@link PhotoViewPagerAdapter}. It snaps one page at a time and recycles pages instead of
+ * creating a view per image. A zoomed page keeps the touch stream until it is panned to its
+ * edge, as with ViewPager. A {@link GalleryPrefetcher} can be plugged in with
+ * {@link #setPrefetcher(GalleryPrefetcher)} and is fed the scroll position and page size.
+ * <p>
+ * Needs the RecyclerView support library, which PhotoView itself does not depend on.
+ */
+public class PhotoViewRecyclerPager extends RecyclerView {
+
+    private static final int INVALID_POINTER = -1;
+
+    /**
+     * Interface definition for a callback to be invoked when a new page has settled.
+     */
+    public interface OnPageSelectedListener {
+
+        void onPageSelected(int position);
+    }
+
+    private final LinearLayoutManager mLayoutManager;
+    private final PagerSnapHelper mSnapHelper = new PagerSnapHelper();
+    private GalleryPrefetcher mPrefetcher;
+    private OnPageSelectedListener mPageSelectedListener;
+    private int mCurrentItem = NO_POSITION;
+    // The pointer which went down first, the one RecyclerView scrolls with, as pointer up
+    // events never reach it while a pinch is under way
+    private int mActivePointerId = INVALID_POINTER;
+
+    public PhotoViewRecyclerPager(Context context) {
+        this(context, null);
+    }
+
+    public PhotoViewRecyclerPager(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PhotoViewRecyclerPager(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        mLayoutManager = new LinearLayoutManager(context, LinearLayoutManager.HORIZONTAL, false);
+        setLayoutManager(mLayoutManager);
+        setHasFixedSize(true);
+        // Keep the page just swiped away bound, so that swiping back does not rebind it
+        setItemViewCacheSize(1);
+        mSnapHelper.attachToRecyclerView(this);
+        addOnScrollListener(new OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                dispatchPageScrolled();
+            }
+
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == SCROLL_STATE_IDLE) {
+                    updateCurrentItem();
+                }
+            }
+        });
+    }
+
+    public void setOnPageSelectedListener(OnPageSelectedListener listener) {
+        mPageSelectedListener = listener;
+    }
+
+    /**
+     * @param prefetcher the prefetcher to follow this pager, or null
+     */
+    public void setPrefetcher(GalleryPrefetcher prefetcher) {
+        mPrefetcher = prefetcher;
+        if (prefetcher != null) {
+            if (getAdapter() != null) {
+                prefetcher.setCount(getAdapter().getItemCount());
+            }
+            prefetcher.setTargetSize(getWidth(), getHeight());
+            if (mCurrentItem != NO_POSITION) {
+                prefetcher.setCurrentPage(mCurrentItem);
+            }
+        }
+    }
+
+    @Override
+    public void setAdapter(Adapter adapter) {
+        super.setAdapter(adapter);
+        mCurrentItem = NO_POSITION;
+        if (mPrefetcher != null && adapter != null) {
+            mPrefetcher.clear();
+            mPrefetcher.setCount(adapter.getItemCount());
+        }
+    }
+
+    /**
+     * @return the page which is snapped into place, or {@link RecyclerView#NO_POSITION}
+     */
+    public int getCurrentItem() {
+        return mCurrentItem;
+    }
+
+    public void setCurrentItem(int position, boolean smoothScroll) {
+        if (smoothScroll) {
+            smoothScrollToPosition(position);
+        } else {
+            scrollToPosition(position);
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    updateCurrentItem();
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mPrefetcher != null) {
+            mPrefetcher.setTargetSize(w, h);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (mCurrentItem == NO_POSITION) {
+            updateCurrentItem();
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent e) {
+        if (e.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mActivePointerId = e.getPointerId(0);
+        }
+        if (e.getPointerCount() > 1) {
+            // A pinch belongs to the page
+            return false;
+        }
+        if (e.findPointerIndex(mActivePointerId) != 0) {
+            // A zoomed page released the gesture after the pointer we track was lifted, so the
+            // pointer left belongs to the page
+            return false;
+        }
+        return super.onInterceptTouchEvent(e);
+    }
+
+    private void dispatchPageScrolled() {
+        if (mPrefetcher == null) {
+            return;
+        }
+        final int first = mLayoutManager.findFirstVisibleItemPosition();
+        final View child = first != NO_POSITION ? mLayoutManager.findViewByPosition(first) : null;
+        if (child == null || child.getWidth() == 0) {
+            return;
+        }
+        mPrefetcher.onPageScrolled(first, -child.getLeft() / (float) child.getWidth());
+    }
+
+    private void updateCurrentItem() {
+        final View snapView = mSnapHelper.findSnapView(mLayoutManager);
+        final int position = snapView != null ? getChildAdapterPosition(snapView) : NO_POSITION;
+        if (position == NO_POSITION || position == mCurrentItem) {
+            return;
+        }
+        mCurrentItem = position;
+        if (mPrefetcher != null) {
+            mPrefetcher.setCurrentPage(position);
+        }
+        if (mPageSelectedListener != null) {
+            mPageSelectedListener.onPageSelected(position);
+        }
+    }
+}
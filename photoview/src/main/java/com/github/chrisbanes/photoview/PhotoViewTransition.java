@@ -0,0 +1,158 @@
+package com.github.chrisbanes.photoview;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.RectEvaluator;
+import android.animation.TypeEvaluator;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.transition.Transition;
+import android.transition.TransitionValues;
+import android.util.AttributeSet;
+import android.util.Property;
+import android.view.ViewGroup;
+
+/**
+ * A shared element transition for {@link PhotoView}, the counterpart of the framework's
+ * ChangeImageTransform. It animates the matrix the image is drawn with and the part of the view
+ * the image covers, so an opening activity only runs a matrix animation instead of laying out
+ * the view on every frame. Works with and without {@link PhotoView#setDirectDraw(boolean)}.
+ * <p>
+ * Use it in place of ChangeImageTransform, together with ChangeBounds for the view itself:
+ * <pre>
+ * TransitionSet set = new TransitionSet();
+ * set.addTransition(new ChangeBounds());
+ * set.addTransition(new PhotoViewTransition());
+ * getWindow().setSharedElementEnterTransition(set);
+ * </pre>
+ */
+@TargetApi(21)
+public class PhotoViewTransition extends Transition {
+
+    private static final String PROPNAME_MATRIX = "photoview:transition:matrix";
+    private static final String PROPNAME_CLIP = "photoview:transition:clip";
+
+    private static final String[] sTransitionProperties = {
+            PROPNAME_MATRIX,
+            PROPNAME_CLIP
+    };
+
+    private static final Property<PhotoView, Matrix> TRANSITION_MATRIX =
+            new Property<PhotoView, Matrix>(Matrix.class, "transitionMatrix") {
+                @Override
+                public void set(PhotoView view, Matrix matrix) {
+                    view.setTransitionMatrix(matrix);
+                }
+
+                @Override
+                public Matrix get(PhotoView view) {
+                    return null;
+                }
+            };
+
+    public PhotoViewTransition() {
+    }
+
+    public PhotoViewTransition(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    public String[] getTransitionProperties() {
+        return sTransitionProperties;
+    }
+
+    @Override
+    public void captureStartValues(TransitionValues transitionValues) {
+        captureValues(transitionValues);
+    }
+
+    @Override
+    public void captureEndValues(TransitionValues transitionValues) {
+        captureValues(transitionValues);
+    }
+
+    private void captureValues(TransitionValues transitionValues) {
+        if (!(transitionValues.view instanceof PhotoView)) {
+            return;
+        }
+        PhotoView photoView = (PhotoView) transitionValues.view;
+        if (photoView.getDrawable() == null) {
+            return;
+        }
+        transitionValues.values.put(PROPNAME_MATRIX, new Matrix(photoView.getImageMatrix()));
+        Rect clip = new Rect();
+        photoView.getDisplayClip(clip);
+        transitionValues.values.put(PROPNAME_CLIP, clip);
+    }
+
+    @Override
+    public Animator createAnimator(ViewGroup sceneRoot, TransitionValues startValues,
+                                   TransitionValues endValues) {
+        if (startValues == null || endValues == null
+                || !startValues.values.containsKey(PROPNAME_MATRIX)
+                || !endValues.values.containsKey(PROPNAME_MATRIX)) {
+            return null;
+        }
+        final PhotoView photoView = (PhotoView) endValues.view;
+        final Matrix startMatrix = (Matrix) startValues.values.get(PROPNAME_MATRIX);
+        final Matrix endMatrix = (Matrix) endValues.values.get(PROPNAME_MATRIX);
+        final Rect startClip = (Rect) startValues.values.get(PROPNAME_CLIP);
+        final Rect endClip = (Rect) endValues.values.get(PROPNAME_CLIP);
+
+        final boolean matrixChanged = !startMatrix.equals(endMatrix);
+        final boolean clipChanged = !startClip.equals(endClip)
+                && !startClip.isEmpty() && !endClip.isEmpty();
+        if (!matrixChanged && !clipChanged) {
+            return null;
+        }
+
+        AnimatorSet set = new AnimatorSet();
+        if (matrixChanged) {
+            photoView.setTransitionMatrix(startMatrix);
+            set.play(ObjectAnimator.ofObject(photoView, TRANSITION_MATRIX,
+                    new MatrixEvaluator(), startMatrix, endMatrix));
+        }
+        final Rect originalClip = photoView.getClipBounds();
+        if (clipChanged) {
+            photoView.setClipBounds(startClip);
+            set.play(ObjectAnimator.ofObject(photoView, "clipBounds",
+                    new RectEvaluator(), startClip, endClip));
+        }
+        set.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // Hand drawing back to the attacher, which never stopped tracking the end state
+                photoView.setTransitionMatrix(null);
+                photoView.setClipBounds(originalClip);
+            }
+        });
+        return set;
+    }
+
+    /**
+     * Interpolates each of the nine values of a matrix. Reuses the matrix it returns, which is
+     * fine as {@link PhotoView#setTransitionMatrix(Matrix)} copies it.
+     */
+    private static class MatrixEvaluator implements TypeEvaluator<Matrix> {
+
+        private final float[] mStartValues = new float[9];
+        private final float[] mEndValues = new float[9];
+        private final Matrix mMatrix = new Matrix();
+
+        @Override
+        public Matrix evaluate(float fraction, Matrix startValue, Matrix endValue) {
+            startValue.getValues(mStartValues);
+            endValue.getValues(mEndValues);
+            for (int i = 0; i < 9; i++) {
+                mEndValues[i] = mStartValues[i] + fraction * (mEndValues[i] - mStartValues[i]);
+            }
+            mMatrix.setValues(mEndValues);
+            return mMatrix;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.github.chrisbanes.photoview;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.support.v4.app.ActivityManagerCompat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * A {@link TileDecoder} backed by {@link BitmapRegionDecoder}, for JPEG and PNG images. A region
+ * decoder only decodes one region at a time, so this keeps a pool of them over the same image
+ * to decode tiles on several cores at once. The instances share the image data: file
+ * descriptors are memory mapped once by the platform, byte arrays are used in place. Further
+ * instances are only opened once all existing ones are busy.
+ * <p>
+ * {@link #recycle()} it once the image is no longer shown.
+ */
+public class RegionTileDecoder implements TileDecoder {
+
+    // Memory class, in MB, budgeted per pooled instance for its decoding state
+    private static final int MEMORY_CLASS_PER_INSTANCE = 32;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Opens another region decoder over the image.
+     */
+    private interface Opener {
+
+        BitmapRegionDecoder open() throws IOException;
+    }
+
+    private final Opener mOpener;
+    private final Closeable mSource;
+    private final int mWidth;
+    private final int mHeight;
+
+    private final ArrayList<BitmapRegionDecoder> mIdle = new ArrayList<BitmapRegionDecoder>();
+    private int mMaxInstances;
+    private int mInstances;
+    private boolean mRecycled;
+
+    private RegionTileDecoder(Opener opener, Closeable source, int poolSize) throws IOException {
+        mOpener = opener;
+        mSource = source;
+        mMaxInstances = Math.max(1, poolSize);
+        final BitmapRegionDecoder decoder;
+        try {
+            decoder = opener.open();
+        } catch (IOException e) {
+            closeSource();
+            throw e;
+        }
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mIdle.add(decoder);
+        mInstances = 1;
+    }
+
+    /**
+     * @return the number of region decoders to pool on this device: one per core but the one
+     * the UI runs on, as far as the app's memory class allows
+     */
+    public static int getDefaultPoolSize(Context context) {
+        final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (ActivityManagerCompat.isLowRamDevice(am)) {
+            return 1;
+        }
+        final int cores = Runtime.getRuntime().availableProcessors() - 1;
+        final int byMemory = am.getMemoryClass() / MEMORY_CLASS_PER_INSTANCE;
+        return Math.max(1, Math.min(cores, byMemory));
+    }
+
+    public static RegionTileDecoder newInstance(String pathName) throws IOException {
+        return newInstance(pathName, 1);
+    }
+
+    /**
+     * @param poolSize the most region decoders to open, see {@link #getDefaultPoolSize(Context)}
+     */
+    public static RegionTileDecoder newInstance(String pathName, int poolSize) throws IOException {
+        final FileInputStream in = new FileInputStream(pathName);
+        // Kept open until recycle(), every instance maps the same descriptor
+        return new RegionTileDecoder(newOpener(in.getFD()), in, poolSize);
+    }
+
+    public static RegionTileDecoder newInstance(FileDescriptor fd) throws IOException {
+        return newInstance(fd, 1);
+    }
+
+    /**
+     * @param fd       a descriptor of the image file, which must stay open until
+     *                 {@link #recycle()}
+     * @param poolSize the most region decoders to open, see {@link #getDefaultPoolSize(Context)}
+     */
+    public static RegionTileDecoder newInstance(FileDescriptor fd, int poolSize) throws IOException {
+        return new RegionTileDecoder(newOpener(fd), null, poolSize);
+    }
+
+    /**
+     * The stream is read to the end and may be closed once this returns.
+     */
+    public static RegionTileDecoder newInstance(InputStream is) throws IOException {
+        return newInstance(is, 1);
+    }
+
+    /**
+     * The stream is read to the end and may be closed once this returns.
+     *
+     * @param poolSize the most region decoders to open, see {@link #getDefaultPoolSize(Context)}
+     */
+    public static RegionTileDecoder newInstance(InputStream is, int poolSize) throws IOException {
+        final byte[] data = readFully(is);
+        return newInstance(data, 0, data.length, poolSize);
+    }
+
+    /**
+     * @param data     the encoded image, which must not be changed until {@link #recycle()}
+     * @param poolSize the most region decoders to open, see {@link #getDefaultPoolSize(Context)}
+     */
+    public static RegionTileDecoder newInstance(final byte[] data, final int offset, final int length,
+                                                int poolSize) throws IOException {
+        return new RegionTileDecoder(new Opener() {
+            @Override
+            public BitmapRegionDecoder open() throws IOException {
+                // Shareable, so every instance decodes from the same array instead of a copy
+                return BitmapRegionDecoder.newInstance(data, offset, length, true);
+            }
+        }, null, poolSize);
+    }
+
+    private static Opener newOpener(final FileDescriptor fd) {
+        return new Opener() {
+            @Override
+            public BitmapRegionDecoder open() throws IOException {
+                // Shareable, so the platform maps the file rather than copying it per instance
+                return BitmapRegionDecoder.newInstance(fd, true);
+            }
+        };
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public synchronized int getParallelism() {
+        return mMaxInstances;
+    }
+
+    @Override
+    public Bitmap decodeRegion(Rect region, BitmapFactory.Options options) throws IOException {
+        final BitmapRegionDecoder decoder = acquire();
+        try {
+            return decoder.decodeRegion(region, options);
+        } catch (IllegalStateException e) {
+            // Recycled while the tile was queued
+            throw new IOException("Decoder was recycled", e);
+        } finally {
+            release(decoder);
+        }
+    }
+
+    /**
+     * Take an idle instance, open another one if all are busy and the pool is not full yet, or
+     * wait for one to be released.
+     */
+    private BitmapRegionDecoder acquire() throws IOException {
+        synchronized (this) {
+            while (true) {
+                if (mRecycled) {
+                    throw new IOException("Decoder was recycled");
+                }
+                if (!mIdle.isEmpty()) {
+                    return mIdle.remove(mIdle.size() - 1);
+                }
+                if (mInstances < mMaxInstances) {
+                    mInstances++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        }
+        try {
+            return mOpener.open();
+        } catch (IOException e) {
+            synchronized (this) {
+                // Make do with the instances there are
+                mInstances--;
+                mMaxInstances = mInstances;
+            }
+            return acquire();
+        }
+    }
+
+    private synchronized void release(BitmapRegionDecoder decoder) {
+        if (mRecycled) {
+            decoder.recycle();
+            return;
+        }
+        mIdle.add(decoder);
+        notify();
+    }
+
+    /**
+     * Free the region decoders, immediately for idle ones and as soon as their decode is done
+     * for busy ones. Decodes after this fail with an {@link IOException}.
+     */
+    public synchronized void recycle() {
+        if (mRecycled) {
+            return;
+        }
+        mRecycled = true;
+        for (BitmapRegionDecoder decoder : mIdle) {
+            decoder.recycle();
+        }
+        mIdle.clear();
+        notifyAll();
+        closeSource();
+    }
+
+    private void closeSource() {
+        if (mSource != null) {
+            try {
+                mSource.close();
+            } catch (IOException e) {
+                // Nothing left to read from it anyway
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(BUFFER_SIZE, in.available()));
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
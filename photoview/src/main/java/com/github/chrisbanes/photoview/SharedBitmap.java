@@ -0,0 +1,64 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+
+/**
+ * A reference counted bitmap from a {@link SharedBitmapCache}. Whoever gets one from the cache
+ * holds one reference and must {@link #release()} it once the bitmap is no longer drawn; only
+ * then may the cache evict the bitmap or reuse its memory for another decode.
+ * {@link PhotoView#setImageBitmap(SharedBitmap)} takes over the reference it is given.
+ */
+public final class SharedBitmap {
+
+    private final SharedBitmapCache mCache;
+    private final String mSource;
+    private final int mSampleSize;
+    private final Bitmap mBitmap;
+    private final int mByteCount;
+    int mRefCount;
+
+    SharedBitmap(SharedBitmapCache cache, String source, int sampleSize, Bitmap bitmap) {
+        mCache = cache;
+        mSource = source;
+        mSampleSize = sampleSize;
+        mBitmap = bitmap;
+        mByteCount = SharedBitmapCache.getByteCount(bitmap);
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * @return the key of the image this is a decoded variant of
+     */
+    public String getSource() {
+        return mSource;
+    }
+
+    public int getSampleSize() {
+        return mSampleSize;
+    }
+
+    SharedBitmapCache getCache() {
+        return mCache;
+    }
+
+    int getByteCount() {
+        return mByteCount;
+    }
+
+    /**
+     * Take another reference, e.g. before handing the bitmap to a second view.
+     */
+    public void retain() {
+        mCache.retain(this);
+    }
+
+    /**
+     * Give up a reference. The bitmap must not be drawn or used afterwards.
+     */
+    public void release() {
+        mCache.release(this);
+    }
+}
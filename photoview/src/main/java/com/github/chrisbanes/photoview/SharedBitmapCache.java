@@ -0,0 +1,310 @@
+package com.github.chrisbanes.photoview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * A cache of decoded bitmaps, keyed by image source and sample size, shared by every view which
+ * shows the same image: a grid thumbnail, the view a transition starts from, the full
+ * {@link PhotoView}. Bitmaps are handed out as reference counted {@link SharedBitmap}s. Once
+ * nobody holds a bitmap any more it stays cached, least recently released first out, within a
+ * byte budget; evicted mutable bitmaps are kept to decode into via
+ * {@link BitmapFactory.Options#inBitmap} instead of allocating new ones. Thread safe, so decodes
+ * can run in the background.
+ */
+public class SharedBitmapCache {
+
+    /**
+     * Decodes an image, once with {@link BitmapFactory.Options#inJustDecodeBounds} set and once
+     * for real, see {@link #decode(String, int, int, Decoder)}.
+     */
+    public interface Decoder {
+
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    private final HashMap<String, ArrayList<SharedBitmap>> mEntries =
+            new HashMap<String, ArrayList<SharedBitmap>>();
+    // Entries nobody holds, least recently released first
+    private final LinkedHashSet<SharedBitmap> mUnreferenced = new LinkedHashSet<SharedBitmap>();
+    // Evicted bitmaps waiting to be decoded into, oldest first
+    private final ArrayList<Bitmap> mReusable = new ArrayList<Bitmap>();
+
+    private final int mMaxSize;
+    private int mSize;
+
+    /**
+     * @param maxSize the budget in bytes for the bitmaps which are cached or kept for reuse.
+     *                Bitmaps in use are counted but never evicted.
+     */
+    public SharedBitmapCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return a reference to the variant decoded at exactly the given sample size, or null
+     */
+    public synchronized SharedBitmap get(String source, int sampleSize) {
+        final ArrayList<SharedBitmap> variants = mEntries.get(source);
+        if (variants != null) {
+            for (int i = 0, size = variants.size(); i < size; i++) {
+                final SharedBitmap variant = variants.get(i);
+                if (variant.getSampleSize() == sampleSize) {
+                    retain(variant);
+                    return variant;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the variant which is best to show right away for the given sample size: the coarsest
+     * one which is still at least as sharp, or else the sharpest there is.
+     *
+     * @return a reference to the variant, or null if the image is not cached at all
+     */
+    public synchronized SharedBitmap getBest(String source, int sampleSize) {
+        final ArrayList<SharedBitmap> variants = mEntries.get(source);
+        if (variants == null) {
+            return null;
+        }
+        SharedBitmap best = null;
+        for (int i = 0, size = variants.size(); i < size; i++) {
+            final SharedBitmap variant = variants.get(i);
+            if (best == null || isBetter(variant.getSampleSize(), best.getSampleSize(), sampleSize)) {
+                best = variant;
+            }
+        }
+        if (best != null) {
+            retain(best);
+        }
+        return best;
+    }
+
+    private static boolean isBetter(int candidate, int current, int wanted) {
+        if (candidate <= wanted) {
+            return current > wanted || candidate > current;
+        }
+        return current > wanted && candidate < current;
+    }
+
+    /**
+     * Add a decoded bitmap. If the variant is already cached the given bitmap is dropped in
+     * favour of the cached one.
+     *
+     * @return a reference to the cached variant
+     */
+    public synchronized SharedBitmap put(String source, int sampleSize, Bitmap bitmap) {
+        final SharedBitmap cached = get(source, sampleSize);
+        if (cached != null) {
+            return cached;
+        }
+        ArrayList<SharedBitmap> variants = mEntries.get(source);
+        if (variants == null) {
+            variants = new ArrayList<SharedBitmap>(2);
+            mEntries.put(source, variants);
+        }
+        final SharedBitmap entry = new SharedBitmap(this, source, sampleSize, bitmap);
+        entry.mRefCount = 1;
+        variants.add(entry);
+        mSize += entry.getByteCount();
+        trimToSize(mMaxSize);
+        return entry;
+    }
+
+    /**
+     * Get the image at the sample size which fills the given target size, decoding it into a
+     * reusable bitmap if it is not cached yet.
+     *
+     * @return a reference to the bitmap, or null if it could not be decoded
+     */
+    public SharedBitmap decode(String source, int targetWidth, int targetHeight, Decoder decoder)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decoder.decode(options);
+        options.inSampleSize = Util.calculateInSampleSize(options.outWidth, options.outHeight,
+                targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        return decode(source, options, decoder);
+    }
+
+    /**
+     * Get the image at the sample size of the given options, decoding it into a reusable bitmap
+     * if it is not cached yet. The options must hold the image size from a bounds decode.
+     *
+     * @return a reference to the bitmap, or null if it could not be decoded
+     */
+    public SharedBitmap decode(String source, BitmapFactory.Options options, Decoder decoder)
+            throws IOException {
+        final SharedBitmap cached = get(source, options.inSampleSize);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Decoded bitmaps are made mutable so that they can be decoded into once evicted
+        options.inMutable = true;
+        prepareForDecode(options);
+        final Bitmap candidate = options.inBitmap;
+        Bitmap bitmap = null;
+        try {
+            try {
+                bitmap = decoder.decode(options);
+            } catch (IllegalArgumentException e) {
+                // The reused bitmap did not fit after all
+                options.inBitmap = null;
+                bitmap = decoder.decode(options);
+            }
+        } finally {
+            if (candidate != null && candidate != bitmap) {
+                // The decode failed or did not go into the candidate, hand it back to the pool
+                reuse(candidate);
+            }
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        final SharedBitmap shared = put(source, options.inSampleSize, bitmap);
+        if (shared.getBitmap() != bitmap) {
+            // Another thread decoded the same variant first, keep ours to decode into
+            reuse(bitmap);
+        }
+        return shared;
+    }
+
+    private synchronized void reuse(Bitmap bitmap) {
+        if (bitmap.isMutable() && !bitmap.isRecycled()) {
+            mReusable.add(bitmap);
+            mSize += getByteCount(bitmap);
+            trimToSize(mMaxSize);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Set {@link BitmapFactory.Options#inBitmap} to a kept bitmap the image fits into, if any.
+     * The options must hold the image size from a bounds decode, and the sample size.
+     */
+    public synchronized void prepareForDecode(BitmapFactory.Options options) {
+        for (int i = 0, size = mReusable.size(); i < size; i++) {
+            final Bitmap candidate = mReusable.get(i);
+            if (canReuse(candidate, options)) {
+                mReusable.remove(i);
+                mSize -= getByteCount(candidate);
+                options.inBitmap = candidate;
+                options.inMutable = true;
+                return;
+            }
+        }
+    }
+
+    private static boolean canReuse(Bitmap candidate, BitmapFactory.Options options) {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            final int width = (options.outWidth + sampleSize - 1) / sampleSize;
+            final int height = (options.outHeight + sampleSize - 1) / sampleSize;
+            final Bitmap.Config config = options.inPreferredConfig != null
+                    ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+            return width * height * getBytesPerPixel(config) <= getAllocationByteCount(candidate);
+        }
+        // Before KitKat only a bitmap of exactly the same size, decoded without sampling, works
+        return sampleSize == 1 && candidate.getWidth() == options.outWidth
+                && candidate.getHeight() == options.outHeight;
+    }
+
+    synchronized void retain(SharedBitmap entry) {
+        if (entry.mRefCount++ == 0) {
+            mUnreferenced.remove(entry);
+        }
+    }
+
+    synchronized void release(SharedBitmap entry) {
+        if (entry.mRefCount <= 0) {
+            throw new IllegalStateException("Bitmap released more often than retained");
+        }
+        if (--entry.mRefCount == 0) {
+            mUnreferenced.add(entry);
+            trimToSize(mMaxSize);
+        }
+    }
+
+    /**
+     * Evict bitmaps nobody holds, least recently released first and then the ones kept for
+     * reuse, until at most the given number of bytes are cached.
+     */
+    public synchronized void trimToSize(int maxSize) {
+        final Iterator<SharedBitmap> unreferenced = mUnreferenced.iterator();
+        while (mSize > maxSize && unreferenced.hasNext()) {
+            final SharedBitmap entry = unreferenced.next();
+            unreferenced.remove();
+            final ArrayList<SharedBitmap> variants = mEntries.get(entry.getSource());
+            variants.remove(entry);
+            if (variants.isEmpty()) {
+                mEntries.remove(entry.getSource());
+            }
+            final Bitmap bitmap = entry.getBitmap();
+            if (bitmap.isMutable() && !bitmap.isRecycled()) {
+                // Still counted, now as reusable
+                mReusable.add(bitmap);
+            } else {
+                mSize -= entry.getByteCount();
+            }
+        }
+        while (mSize > maxSize && !mReusable.isEmpty()) {
+            mSize -= getByteCount(mReusable.remove(0));
+        }
+    }
+
+    /**
+     * Evict everything nobody holds.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return the bytes of all bitmaps known to the cache, in use, cached or kept for reuse
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    static int getByteCount(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? getAllocationByteCount(bitmap) : bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    @TargetApi(19)
+    private static int getAllocationByteCount(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * A square of the image decoded at one sample size. Level n tiles are decoded with a sample size
+ * of 2^n, so each covers {@link TileScheduler#TILE_SIZE} &lt;&lt; n source pixels a side.
+ */
+final class Tile {
+
+    static final int STATE_QUEUED = 0;
+    static final int STATE_DECODING = 1;
+    static final int STATE_LOADED = 2;
+    static final int STATE_FAILED = 3;
+
+    private static final int COORD_BITS = 28;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+    final int mLevel;
+    final int mColumn;
+    final int mRow;
+    final long mKey;
+    // In source pixels
+    final Rect mSourceRect = new Rect();
+
+    int mState = STATE_QUEUED;
+    int mDecodeAttempts;
+    Bitmap mBitmap;
+    int mByteCount;
+    boolean mWanted;
+    boolean mVisible;
+    boolean mPredicted;
+    float mDistance;
+    volatile boolean mCancelled;
+    // Neighbours in the LRU list of TileCache, while decoded
+    Tile mPrev;
+    Tile mNext;
+
+    Tile(int level, int column, int row, int sourceWidth, int sourceHeight) {
+        mLevel = level;
+        mColumn = column;
+        mRow = row;
+        mKey = makeKey(level, column, row);
+        final int span = TileScheduler.TILE_SIZE << level;
+        mSourceRect.set(column * span, row * span,
+                Math.min((column + 1) * span, sourceWidth),
+                Math.min((row + 1) * span, sourceHeight));
+    }
+
+    int getSampleSize() {
+        return 1 << mLevel;
+    }
+
+    /**
+     * @return the width of the tile's bitmap once decoded
+     */
+    int getDecodedWidth() {
+        return (mSourceRect.width() + getSampleSize() - 1) / getSampleSize();
+    }
+
+    /**
+     * @return the height of the tile's bitmap once decoded
+     */
+    int getDecodedHeight() {
+        return (mSourceRect.height() + getSampleSize() - 1) / getSampleSize();
+    }
+
+    /**
+     * Pack a tile's position into a long: the level in the top 8 bits, then 28 bits each for the
+     * column and the row. Keys sort by level, so coarse tiles come after fine ones.
+     */
+    static long makeKey(int level, int column, int row) {
+        return ((long) level << (2 * COORD_BITS))
+                | ((column & COORD_MASK) << COORD_BITS)
+                | (row & COORD_MASK);
+    }
+
+    static int getLevel(long key) {
+        return (int) (key >>> (2 * COORD_BITS));
+    }
+}
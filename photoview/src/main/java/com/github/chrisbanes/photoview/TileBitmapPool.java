@@ -0,0 +1,115 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.ArrayList;
+
+/**
+ * Bitmaps of evicted tiles, kept for {@link TileScheduler} to decode new tiles into through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}. A region decoder draws into the
+ * bitmap it is given without changing its size, so bitmaps are bucketed by exact dimensions
+ * and config: full tiles all share one bucket, edge tiles get their own. Once panning has
+ * filled the pool no more pixel memory is allocated.
+ * <p>
+ * Region decoders ignore {@link android.graphics.BitmapFactory.Options#inMutable}, and only
+ * mutable bitmaps can be decoded into, so tiles are always decoded into a bitmap from
+ * {@link #get(int, int, Bitmap.Config)}, which creates one when the pool has none.
+ * <p>
+ * Thread safe: bitmaps are taken on the decode threads and returned on the UI thread.
+ */
+class TileBitmapPool implements ComponentCallbacks2 {
+
+    private final LongSparseArray<ArrayList<Bitmap>> mBuckets = new LongSparseArray<ArrayList<Bitmap>>();
+    private final int mMaxSize;
+    private int mSize;
+
+    /**
+     * @param maxSize the most bytes to keep, bitmaps returned beyond that are recycled
+     */
+    TileBitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return a mutable bitmap of exactly the given size and config, pooled or else new
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            final ArrayList<Bitmap> bucket = mBuckets.get(getKey(width, height, config));
+            if (bucket != null && !bucket.isEmpty()) {
+                final Bitmap bitmap = bucket.remove(bucket.size() - 1);
+                mSize -= SharedBitmapCache.getByteCount(bitmap);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Keep a bitmap nobody draws any more for reuse, or recycle it if it cannot be reused, e.g.
+     * one a decoder allocated itself, or the pool is full.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        final int byteCount = SharedBitmapCache.getByteCount(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || mSize + byteCount > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        final long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.add(bitmap);
+        mSize += byteCount;
+    }
+
+    /**
+     * Recycle every pooled bitmap.
+     */
+    synchronized void clear() {
+        for (int i = 0, size = mBuckets.size(); i < size; i++) {
+            final ArrayList<Bitmap> bucket = mBuckets.valueAt(i);
+            for (int j = 0, count = bucket.size(); j < count; j++) {
+                bucket.get(j).recycle();
+            }
+            bucket.clear();
+        }
+        mSize = 0;
+    }
+
+    /**
+     * @return the bytes held by pooled bitmaps
+     */
+    synchronized int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // Pooled bitmaps are not drawn, so they go before any cached tile
+            clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private static long getKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
@@ -0,0 +1,287 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import java.util.Arrays;
+
+/**
+ * The tiles of one image, decoded or on their way, for {@link TileScheduler}. Tiles are looked
+ * up by {@link Tile#makeKey(int, int, int)} in an open-addressing table of primitive longs, and
+ * decoded tiles are chained into an LRU list through the tiles themselves, so neither lookups
+ * nor churn allocate.
+ * <p>
+ * Decoded tiles are kept within a byte budget and evicted least recently used first, except for
+ * pinned tiles: those the current viewport wants, i.e. the ones visible through the draw matrix
+ * and the margin around them. The budget shrinks in steps as the system reports memory
+ * pressure. Not thread safe, used from the UI thread.
+ */
+class TileCache implements ComponentCallbacks2 {
+
+    /**
+     * Interface definition for a callback to be invoked when a decoded tile is evicted. Its
+     * bitmap is no longer drawn and belongs to the listener.
+     */
+    interface OnEvictedListener {
+
+        void onTileEvicted(Tile tile);
+    }
+
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final OnEvictedListener mListener;
+    private int mBaseMaxSize;
+    private int mMaxSize;
+    private int mSize;
+
+    private long[] mKeys;
+    private Tile[] mTiles;
+    private int mCount;
+
+    // Least recently used decoded tile first
+    private Tile mHead;
+    private Tile mTail;
+
+    /**
+     * @param maxSize the budget for decoded tiles, in bytes
+     */
+    TileCache(int maxSize, OnEvictedListener listener) {
+        mBaseMaxSize = maxSize;
+        mMaxSize = maxSize;
+        mListener = listener;
+        mKeys = new long[INITIAL_CAPACITY];
+        Arrays.fill(mKeys, EMPTY);
+        mTiles = new Tile[INITIAL_CAPACITY];
+    }
+
+    Tile get(long key) {
+        final int mask = mKeys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            final long k = mKeys[i];
+            if (k == key) {
+                return mTiles[i];
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Add a tile which is still to be decoded. It only counts against the budget once
+     * {@link #onLoaded(Tile)}.
+     */
+    void put(Tile tile) {
+        if ((mCount + 1) * 2 > mKeys.length) {
+            resize(mKeys.length * 2);
+        }
+        final int mask = mKeys.length - 1;
+        int i = slot(tile.mKey, mask);
+        while (mKeys[i] != EMPTY) {
+            if (mKeys[i] == tile.mKey) {
+                remove(tile.mKey);
+                put(tile);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = tile.mKey;
+        mTiles[i] = tile;
+        mCount++;
+    }
+
+    /**
+     * @return the removed tile, or null
+     */
+    Tile remove(long key) {
+        final int mask = mKeys.length - 1;
+        int i = slot(key, mask);
+        while (mKeys[i] != key) {
+            if (mKeys[i] == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        final Tile tile = mTiles[i];
+        // Shift the rest of the probe run back, so lookups need no tombstones
+        int hole = i;
+        for (int j = (i + 1) & mask; mKeys[j] != EMPTY; j = (j + 1) & mask) {
+            final int home = slot(mKeys[j], mask);
+            // Move the entry if the hole lies between its home slot and where it is now
+            if (hole <= j ? (home <= hole || home > j) : (home <= hole && home > j)) {
+                mKeys[hole] = mKeys[j];
+                mTiles[hole] = mTiles[j];
+                hole = j;
+            }
+        }
+        mKeys[hole] = EMPTY;
+        mTiles[hole] = null;
+        mCount--;
+        if (tile.mState == Tile.STATE_LOADED) {
+            unlink(tile);
+            mSize -= tile.mByteCount;
+        }
+        return tile;
+    }
+
+    /**
+     * Count a tile which has just been decoded against the budget, evicting others as needed.
+     */
+    void onLoaded(Tile tile) {
+        tile.mByteCount = SharedBitmapCache.getByteCount(tile.mBitmap);
+        mSize += tile.mByteCount;
+        linkLast(tile);
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Mark a decoded tile as just used.
+     */
+    void touch(Tile tile) {
+        if (tile.mState == Tile.STATE_LOADED && tile != mTail) {
+            unlink(tile);
+            linkLast(tile);
+        }
+    }
+
+    /**
+     * Evict decoded tiles which are not pinned, least recently used first, until the budget is
+     * met again.
+     */
+    void trim() {
+        trimToSize(mMaxSize);
+    }
+
+    private void trimToSize(int maxSize) {
+        Tile tile = mHead;
+        while (mSize > maxSize && tile != null) {
+            final Tile next = tile.mNext;
+            if (!tile.mWanted) {
+                remove(tile.mKey);
+                mListener.onTileEvicted(tile);
+            }
+            tile = next;
+        }
+    }
+
+    /**
+     * @return the number of slots, for iterating with {@link #valueAt(int)}
+     */
+    int capacity() {
+        return mTiles.length;
+    }
+
+    /**
+     * @return the tile in the given slot, or null
+     */
+    Tile valueAt(int index) {
+        return mTiles[index];
+    }
+
+    /**
+     * @return the bytes held by decoded tiles
+     */
+    int getSize() {
+        return mSize;
+    }
+
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Change the budget, keeping it shrunk in the same proportion if memory is short.
+     */
+    void setBaseMaxSize(int maxSize) {
+        mMaxSize = (int) ((long) mMaxSize * maxSize / mBaseMaxSize);
+        mBaseMaxSize = maxSize;
+        trimToSize(mMaxSize);
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mTiles, null);
+        mCount = 0;
+        mSize = 0;
+        mHead = mTail = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // Nothing is visible: keep no more than what is pinned, and start afresh with the
+            // full budget when the UI comes back, the running levels shrink it again if needed
+            trimToSize(0);
+            mMaxSize = mBaseMaxSize;
+            return;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMaxSize = mBaseMaxSize / 4;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mMaxSize = mBaseMaxSize / 2;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            mMaxSize = mBaseMaxSize / 4 * 3;
+        }
+        trimToSize(mMaxSize);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimToSize(0);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void resize(int capacity) {
+        final long[] keys = mKeys;
+        final Tile[] tiles = mTiles;
+        mKeys = new long[capacity];
+        Arrays.fill(mKeys, EMPTY);
+        mTiles = new Tile[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int j = slot(keys[i], mask);
+                while (mKeys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                mKeys[j] = keys[i];
+                mTiles[j] = tiles[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        // Mix the level, column and row bits before masking
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void linkLast(Tile tile) {
+        tile.mPrev = mTail;
+        tile.mNext = null;
+        if (mTail != null) {
+            mTail.mNext = tile;
+        } else {
+            mHead = tile;
+        }
+        mTail = tile;
+    }
+
+    private void unlink(Tile tile) {
+        if (tile.mPrev != null) {
+            tile.mPrev.mNext = tile.mNext;
+        } else {
+            mHead = tile.mNext;
+        }
+        if (tile.mNext != null) {
+            tile.mNext.mPrev = tile.mPrev;
+        } else {
+            mTail = tile.mPrev;
+        }
+        tile.mPrev = tile.mNext = null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.chrisbanes.photoview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+
+import java.io.IOException;
+
+/**
+ * Decodes parts of an image which is too large to decode whole, for
+ * {@link PhotoView#setTileDecoder(TileDecoder)}. Called from as many background threads at once
+ * as {@link #getParallelism()} allows.
+ *
+ * @see RegionTileDecoder
+ */
+public interface TileDecoder {
+
+    /**
+     * @return the width of the full image, in pixels
+     */
+    int getWidth();
+
+    /**
+     * @return the height of the full image, in pixels
+     */
+    int getHeight();
+
+    /**
+     * @return the number of regions this decoder can decode at the same time, which is the
+     * number of threads tiles are decoded on
+     */
+    int getParallelism();
+
+    /**
+     * Decode a part of the image, e.g. with
+     * {@link android.graphics.BitmapRegionDecoder#decodeRegion(Rect, BitmapFactory.Options)}.
+     *
+     * @param region  the part to decode, in the pixels of the full image
+     * @param options the options to decode with, {@link BitmapFactory.Options#inSampleSize} among
+     *                them
+     * @return the bitmap, or null
+     */
+    Bitmap decodeRegion(Rect region, BitmapFactory.Options options) throws IOException;
+}
@@ -0,0 +1,619 @@
+package com.github.chrisbanes.photoview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.view.View;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the tiles of a {@link TileDecoder}'s image which the viewport needs, in the order they
+ * matter: tiles where the viewport is headed, then visible tiles, then those just outside the
+ * view. Within each group coarse levels come first, as they cover the same area with a quarter
+ * of the work, then tiles closer to the centre of the viewport. Every viewport change which
+ * crosses into other tiles re-plans the queue, so tiles which scroll out of view during a fling
+ * are dropped before they are decoded. A tile whose decode fails is tried once more. Tiles which were decoded stay in a {@link TileCache} until its budget runs out.
+ * <p>
+ * Tiles are decoded on as many threads as the decoder can serve at once. Only a few decodes are
+ * handed to them at a time, and only a few more per frame, so the queue never commits to work
+ * the viewport has moved away from. All methods must be called from the UI thread.
+ * <p>
+ * An eighth of the heap goes to tiles, split evenly between the schedulers alive at the time,
+ * and every scheduler registers with the application context until {@link #shutdown()}. So a
+ * scheduler should only be kept while its view is attached, as {@link PhotoView} does.
+ */
+class TileScheduler {
+
+    /**
+     * Interface definition for a callback to be invoked when a tile has been decoded.
+     */
+    interface Callback {
+
+        void onTileLoaded();
+    }
+
+    // Decoded pixels a side
+    static final int TILE_SIZE = 512;
+    // New decodes handed to the decoder per frame, at least
+    private static final int MIN_DISPATCH_PER_FRAME = 2;
+    // Zoom levels a hair away from a whole sample size still count as that sample size
+    private static final float LEVEL_EPSILON = 0.01f;
+    // Keeps the span of a tile in source pixels within an int
+    private static final int MAX_LEVEL = 20;
+    private static final int NO_VIEWPORT = -2;
+    // The bitmap pool gets this share of the tile cache budget
+    private static final int POOL_SIZE_DIVISOR = 4;
+    // Decodes of a tile which come back empty before it is given up on
+    private static final int MAX_DECODE_ATTEMPTS = 2;
+    // The drawable level, then the level and tile range of the predicted and current viewports
+    private static final int COVERAGE_SIZE = 11;
+
+    // Alive schedulers, which share the budget
+    private static final ArrayList<TileScheduler> sSchedulers = new ArrayList<TileScheduler>();
+    // Tile bitmaps fit any image, so evicted ones are pooled for all schedulers
+    private static TileBitmapPool sPool;
+
+    private static final Comparator<Tile> PRIORITY = new Comparator<Tile>() {
+        @Override
+        public int compare(Tile lhs, Tile rhs) {
+            if (lhs.mPredicted != rhs.mPredicted) {
+                return lhs.mPredicted ? -1 : 1;
+            }
+            if (lhs.mVisible != rhs.mVisible) {
+                return lhs.mVisible ? -1 : 1;
+            }
+            if (lhs.mLevel != rhs.mLevel) {
+                return lhs.mLevel > rhs.mLevel ? -1 : 1;
+            }
+            return Float.compare(lhs.mDistance, rhs.mDistance);
+        }
+    };
+
+    private final View mView;
+    private final FrameClock mFrameClock;
+    private final TileDecoder mDecoder;
+    private final Callback mCallback;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mMaxInFlight;
+    private final int mMaxDispatchPerFrame;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Context mContext;
+    private final TileCache mCache;
+    private final TileBitmapPool mPool;
+    private final ArrayList<Tile> mPending = new ArrayList<Tile>();
+    private final ArrayList<Tile> mRemoved = new ArrayList<Tile>();
+    // Bitmaps of dropped tiles, which may be on screen until the next frame is drawn
+    private final ArrayList<Bitmap> mDropped = new ArrayList<Bitmap>();
+    private boolean mReleasePosted;
+    private int mInFlight;
+    private boolean mDispatchPosted;
+    private boolean mShutdown;
+
+    private final Matrix mInverseMatrix = new Matrix();
+    private final float[] mMatrixValues = new float[9];
+    private final RectF mTempRect = new RectF();
+    // The visible part of the image, in source pixels
+    private final RectF mViewport = new RectF();
+    // Drawable pixels per source pixel
+    private float mDrawableScaleX;
+    private float mDrawableScaleY;
+    // The coarsest level which is still finer than the drawable
+    private int mDrawableLevel;
+    // The level tiles are decoded at, or -1 if the drawable is sharp enough by itself
+    private int mLevel = -1;
+    // Where the viewport is headed, with its level, or -1 if it is not moving anywhere known
+    private final RectF mPredictedViewport = new RectF();
+    private int mPredictedLevel = -1;
+    // The tiles the last plan covered, so moves within the same tiles are not planned again
+    private final int[] mCoverage = new int[COVERAGE_SIZE];
+    private final int[] mPlannedCoverage = new int[COVERAGE_SIZE];
+    private boolean mPlanned;
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDispatchPosted = false;
+            dispatch();
+        }
+    };
+
+    // Runs at the start of a frame, so a message posted from here runs once it is drawn
+    private final Runnable mReleaseFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mHandler.post(mReleaseRunnable);
+        }
+    };
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mReleasePosted = false;
+            for (int i = 0, size = mDropped.size(); i < size; i++) {
+                mPool.put(mDropped.get(i));
+            }
+            mDropped.clear();
+        }
+    };
+
+    TileScheduler(View view, FrameClock frameClock, TileDecoder decoder, Callback callback) {
+        mView = view;
+        mContext = view.getContext().getApplicationContext();
+        if (sPool == null) {
+            // Holds no view, so it can stay registered for the life of the process
+            sPool = new TileBitmapPool(getTotalCacheSize() / POOL_SIZE_DIVISOR);
+            mContext.registerComponentCallbacks(sPool);
+        }
+        mPool = sPool;
+        mCache = new TileCache(getTotalCacheSize() / (sSchedulers.size() + 1),
+                new TileCache.OnEvictedListener() {
+                    @Override
+                    public void onTileEvicted(Tile tile) {
+                        drop(tile);
+                    }
+                });
+        mContext.registerComponentCallbacks(mCache);
+        sSchedulers.add(this);
+        rebalance();
+        mFrameClock = frameClock;
+        mDecoder = decoder;
+        mCallback = callback;
+        final int threads = Math.max(1, decoder.getParallelism());
+        // One decode queued behind each running one, so no thread waits for the next frame
+        mMaxInFlight = threads * 2;
+        mMaxDispatchPerFrame = Math.max(MIN_DISPATCH_PER_FRAME, threads);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "PhotoView-tiles");
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return an eighth of the heap, as for any other in-memory cache
+     */
+    private static int getTotalCacheSize() {
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * Split the budget evenly between the alive schedulers again.
+     */
+    private static void rebalance() {
+        if (sSchedulers.isEmpty()) {
+            return;
+        }
+        final int cacheSize = getTotalCacheSize() / sSchedulers.size();
+        for (int i = 0, size = sSchedulers.size(); i < size; i++) {
+            sSchedulers.get(i).mCache.setBaseMaxSize(cacheSize);
+        }
+    }
+
+    /**
+     * Follow the image on screen.
+     *
+     * @param matrix     the matrix the drawable is displayed with
+     * @param viewWidth  the width of the view, less padding
+     * @param viewHeight the height of the view, less padding
+     * @param drawable   the drawable, which shows the whole image at a lower resolution
+     */
+    void setViewport(Matrix matrix, int viewWidth, int viewHeight, Drawable drawable) {
+        if (mShutdown) {
+            return;
+        }
+        final int level = mapViewport(matrix, viewWidth, viewHeight, drawable, mTempRect);
+        if (level == NO_VIEWPORT || level == mLevel && mTempRect.equals(mViewport)) {
+            return;
+        }
+        mLevel = level;
+        mViewport.set(mTempRect);
+        plan();
+    }
+
+    /**
+     * Decode the tiles of where the viewport is headed, e.g. where a fling comes to rest, ahead
+     * of everything else, including the tiles it passes on the way there.
+     *
+     * @param matrix the matrix the drawable will be displayed with, or null once the viewport
+     *               has arrived or is not going there after all
+     * @see #setViewport(Matrix, int, int, Drawable)
+     */
+    void setPredictedViewport(Matrix matrix, int viewWidth, int viewHeight, Drawable drawable) {
+        if (mShutdown) {
+            return;
+        }
+        if (matrix == null) {
+            if (mPredictedLevel != -1) {
+                mPredictedLevel = -1;
+                mPredictedViewport.setEmpty();
+                plan();
+            }
+            return;
+        }
+        final int level = mapViewport(matrix, viewWidth, viewHeight, drawable, mTempRect);
+        if (level == NO_VIEWPORT
+                || level == mPredictedLevel && mTempRect.equals(mPredictedViewport)) {
+            return;
+        }
+        mPredictedLevel = level;
+        mPredictedViewport.set(mTempRect);
+        plan();
+    }
+
+    /**
+     * Map the view back into the image, through the drawable into source pixels.
+     *
+     * @param outRect the part of the image in view
+     * @return the level to decode tiles at, -1 if the drawable is sharp enough by itself, or
+     * {@link #NO_VIEWPORT} if there is nothing to show
+     */
+    private int mapViewport(Matrix matrix, int viewWidth, int viewHeight, Drawable drawable,
+                            RectF outRect) {
+        final int sourceWidth = mDecoder.getWidth();
+        final int sourceHeight = mDecoder.getHeight();
+        if (drawable == null || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0
+                || viewWidth <= 0 || viewHeight <= 0 || sourceWidth <= 0 || sourceHeight <= 0
+                || !matrix.invert(mInverseMatrix)) {
+            return NO_VIEWPORT;
+        }
+        mDrawableScaleX = drawable.getIntrinsicWidth() / (float) sourceWidth;
+        mDrawableScaleY = drawable.getIntrinsicHeight() / (float) sourceHeight;
+        mDrawableLevel = getLevel(mDrawableScaleX);
+
+        outRect.set(0, 0, viewWidth, viewHeight);
+        mInverseMatrix.mapRect(outRect);
+        outRect.set(outRect.left / mDrawableScaleX, outRect.top / mDrawableScaleY,
+                outRect.right / mDrawableScaleX, outRect.bottom / mDrawableScaleY);
+        if (!outRect.intersect(0, 0, sourceWidth, sourceHeight)) {
+            outRect.setEmpty();
+        }
+
+        matrix.getValues(mMatrixValues);
+        final float matrixScale = (float) Math.sqrt(
+                mMatrixValues[Matrix.MSCALE_X] * mMatrixValues[Matrix.MSCALE_X]
+                        + mMatrixValues[Matrix.MSKEW_Y] * mMatrixValues[Matrix.MSKEW_Y]);
+        // Screen pixels per source pixel
+        final float screenScale = matrixScale * mDrawableScaleX;
+        final int level = getLevel(screenScale);
+        return level < mDrawableLevel ? level : -1;
+    }
+
+    /**
+     * @return the coarsest level whose tiles still have at least one pixel per screen pixel
+     */
+    private static int getLevel(float screenScale) {
+        int level = 0;
+        while ((2 << level) * screenScale <= 1f + LEVEL_EPSILON && level < MAX_LEVEL) {
+            level++;
+        }
+        return level;
+    }
+
+    private void plan() {
+        getCoverage(mCoverage);
+        if (mPlanned && Arrays.equals(mCoverage, mPlannedCoverage)) {
+            // The same tiles are wanted, only their distances to the centre would change
+            return;
+        }
+        mPlanned = true;
+        System.arraycopy(mCoverage, 0, mPlannedCoverage, 0, COVERAGE_SIZE);
+
+        for (int i = 0, capacity = mCache.capacity(); i < capacity; i++) {
+            final Tile tile = mCache.valueAt(i);
+            if (tile == null) {
+                continue;
+            }
+            tile.mWanted = false;
+            tile.mVisible = false;
+            tile.mPredicted = false;
+            tile.mDistance = Float.MAX_VALUE;
+        }
+        if (mPredictedLevel >= 0 && !mPredictedViewport.isEmpty()) {
+            planViewport(mPredictedViewport, mPredictedLevel, 0, true);
+        }
+        if (mLevel >= 0 && !mViewport.isEmpty()) {
+            planViewport(mViewport, mLevel, 1, false);
+        }
+
+        mPending.clear();
+        for (int i = 0, capacity = mCache.capacity(); i < capacity; i++) {
+            final Tile tile = mCache.valueAt(i);
+            if (tile == null) {
+                continue;
+            }
+            if (tile.mWanted) {
+                if (tile.mState == Tile.STATE_QUEUED) {
+                    mPending.add(tile);
+                } else {
+                    mCache.touch(tile);
+                }
+            } else if (tile.mState != Tile.STATE_LOADED) {
+                // Decoded tiles stay cached, the rest are no longer worth decoding. Failed ones
+                // are tried afresh should they be wanted again
+                mRemoved.add(tile);
+            }
+        }
+        for (int i = 0, size = mRemoved.size(); i < size; i++) {
+            final Tile tile = mRemoved.get(i);
+            mCache.remove(tile.mKey);
+            drop(tile);
+        }
+        mRemoved.clear();
+        // Tiles the viewport no longer wants are not pinned any more
+        mCache.trim();
+        Collections.sort(mPending, PRIORITY);
+        scheduleDispatch();
+    }
+
+    /**
+     * Put the levels and tile ranges {@link #plan()} covers into {@code out}, the levels being
+     * -1 where there is nothing to cover. The ranges of coarser levels and margins follow from
+     * these.
+     */
+    private void getCoverage(int[] out) {
+        out[0] = mDrawableLevel;
+        getRange(mPredictedViewport, mPredictedLevel, out, 1);
+        getRange(mViewport, mLevel, out, 6);
+    }
+
+    private static void getRange(RectF viewport, int level, int[] out, int offset) {
+        if (level < 0 || viewport.isEmpty()) {
+            Arrays.fill(out, offset, offset + 5, -1);
+            return;
+        }
+        final int span = TILE_SIZE << level;
+        out[offset] = level;
+        out[offset + 1] = (int) (viewport.left / span);
+        out[offset + 2] = (int) (viewport.top / span);
+        out[offset + 3] = (int) Math.ceil(viewport.right / span) - 1;
+        out[offset + 4] = (int) Math.ceil(viewport.bottom / span) - 1;
+    }
+
+    /**
+     * Cancel the tile if it is still to be decoded, or hand its bitmap to the pool once the view
+     * has been drawn without it, as a decode thread may write into it right away. It is no longer
+     * drawn or cached.
+     */
+    private void drop(Tile tile) {
+        tile.mCancelled = true;
+        if (tile.mBitmap != null) {
+            mDropped.add(tile.mBitmap);
+            tile.mBitmap = null;
+            if (!mReleasePosted) {
+                mReleasePosted = true;
+                mView.invalidate();
+                mFrameClock.postFrameCallback(mReleaseFrameRunnable);
+            }
+        }
+    }
+
+    private void planViewport(RectF viewport, int level, int margin, boolean predicted) {
+        if (level + 1 < mDrawableLevel) {
+            // Fills the view quickly while the finer tiles are still decoding
+            planLevel(viewport, level + 1, 0, predicted);
+        }
+        planLevel(viewport, level, margin, predicted);
+    }
+
+    /**
+     * Want the tiles of a level which cover the viewport, plus a margin of tiles around it which
+     * are decoded once the ones in view are.
+     */
+    private void planLevel(RectF viewport, int level, int margin, boolean predicted) {
+        final int span = TILE_SIZE << level;
+        final int columns = (mDecoder.getWidth() + span - 1) / span;
+        final int rows = (mDecoder.getHeight() + span - 1) / span;
+        final int left = (int) (viewport.left / span);
+        final int top = (int) (viewport.top / span);
+        final int right = (int) Math.ceil(viewport.right / span) - 1;
+        final int bottom = (int) Math.ceil(viewport.bottom / span) - 1;
+        final float centreX = viewport.centerX();
+        final float centreY = viewport.centerY();
+
+        for (int row = Math.max(0, top - margin); row <= Math.min(rows - 1, bottom + margin); row++) {
+            for (int column = Math.max(0, left - margin);
+                 column <= Math.min(columns - 1, right + margin); column++) {
+                final long key = Tile.makeKey(level, column, row);
+                Tile tile = mCache.get(key);
+                if (tile == null) {
+                    tile = new Tile(level, column, row, mDecoder.getWidth(), mDecoder.getHeight());
+                    mCache.put(tile);
+                }
+                tile.mWanted = true;
+                if (row >= top && row <= bottom && column >= left && column <= right) {
+                    if (predicted) {
+                        tile.mPredicted = true;
+                    } else {
+                        tile.mVisible = true;
+                    }
+                }
+                final float dx = tile.mSourceRect.exactCenterX() - centreX;
+                final float dy = tile.mSourceRect.exactCenterY() - centreY;
+                tile.mDistance = Math.min(tile.mDistance, dx * dx + dy * dy);
+            }
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (!mDispatchPosted && !mPending.isEmpty() && mInFlight < mMaxInFlight) {
+            mDispatchPosted = true;
+            mFrameClock.postFrameCallback(mDispatchRunnable);
+        }
+    }
+
+    private void dispatch() {
+        int dispatched = 0;
+        while (!mPending.isEmpty() && mInFlight < mMaxInFlight
+                && dispatched < mMaxDispatchPerFrame) {
+            final Tile tile = mPending.remove(0);
+            tile.mState = Tile.STATE_DECODING;
+            mInFlight++;
+            dispatched++;
+            mExecutor.execute(new DecodeTask(tile));
+        }
+        scheduleDispatch();
+    }
+
+    private void onTileDecoded(Tile tile, Bitmap bitmap) {
+        mInFlight--;
+        if (mShutdown) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        } else if (tile.mCancelled) {
+            if (bitmap != null) {
+                mPool.put(bitmap);
+            }
+        } else if (bitmap == null) {
+            if (++tile.mDecodeAttempts < MAX_DECODE_ATTEMPTS && tile.mWanted) {
+                tile.mState = Tile.STATE_QUEUED;
+                mPending.add(tile);
+                Collections.sort(mPending, PRIORITY);
+            } else {
+                // The drawable keeps standing in for it until it is no longer wanted
+                tile.mState = Tile.STATE_FAILED;
+            }
+        } else {
+            tile.mBitmap = bitmap;
+            tile.mState = Tile.STATE_LOADED;
+            mCache.onLoaded(tile);
+            mCallback.onTileLoaded();
+        }
+        scheduleDispatch();
+    }
+
+    /**
+     * Draw the decoded tiles in view over the drawable, coarse levels first, so cached tiles of
+     * coarser levels stand in for those of the current level which are still decoding.
+     *
+     * @param canvas the canvas, set up to draw the drawable
+     */
+    void draw(Canvas canvas) {
+        if (mLevel < 0 || mViewport.isEmpty()) {
+            return;
+        }
+        final int saveCount = canvas.save();
+        canvas.scale(mDrawableScaleX, mDrawableScaleY);
+        for (int level = mDrawableLevel - 1; level >= mLevel; level--) {
+            final int span = TILE_SIZE << level;
+            final int left = (int) (mViewport.left / span);
+            final int top = (int) (mViewport.top / span);
+            final int right = (int) Math.ceil(mViewport.right / span) - 1;
+            final int bottom = (int) Math.ceil(mViewport.bottom / span) - 1;
+            for (int row = top; row <= bottom; row++) {
+                for (int column = left; column <= right; column++) {
+                    final Tile tile = mCache.get(Tile.makeKey(level, column, row));
+                    if (tile != null && tile.mState == Tile.STATE_LOADED) {
+                        canvas.drawBitmap(tile.mBitmap, null, tile.mSourceRect, mPaint);
+                    }
+                }
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Drop all tiles and stop the background threads. Must not be used afterwards. The decoder is
+     * left to its owner to close.
+     */
+    void shutdown() {
+        mShutdown = true;
+        mContext.unregisterComponentCallbacks(mCache);
+        sSchedulers.remove(this);
+        rebalance();
+        for (int i = 0, capacity = mCache.capacity(); i < capacity; i++) {
+            final Tile tile = mCache.valueAt(i);
+            if (tile != null) {
+                drop(tile);
+            }
+        }
+        mCache.clear();
+        mPending.clear();
+        mFrameClock.removeFrameCallback(mDispatchRunnable);
+        mDispatchPosted = false;
+        mExecutor.shutdown();
+    }
+
+    private class DecodeTask implements Runnable {
+
+        private final Tile mTile;
+
+        DecodeTask(Tile tile) {
+            mTile = tile;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            if (!mTile.mCancelled) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mTile.getSampleSize();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    // Region decoders take inBitmap from Jelly Bean on. What they allocate
+                    // themselves is immutable, so always hand them a bitmap to pool later
+                    options.inBitmap = mPool.get(mTile.getDecodedWidth(),
+                            mTile.getDecodedHeight(), Bitmap.Config.ARGB_8888);
+                }
+                try {
+                    bitmap = decode(options);
+                } catch (IOException e) {
+                    // Leave the drawable showing through
+                }
+                if (options.inBitmap != null && options.inBitmap != bitmap) {
+                    // Not decoded into, e.g. by a decoder which ignores inBitmap
+                    mPool.put(options.inBitmap);
+                }
+            }
+            final Bitmap result = bitmap;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileDecoded(mTile, result);
+                }
+            });
+        }
+
+        private Bitmap decode(BitmapFactory.Options options) throws IOException {
+            try {
+                return mDecoder.decodeRegion(mTile.mSourceRect, options);
+            } catch (IllegalArgumentException e) {
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+                // The pooled bitmap does not fit after all, so decode into a new one
+                options.inBitmap.recycle();
+                options.inBitmap = null;
+                return mDecoder.decodeRegion(mTile.mSourceRect, options);
+            }
+        }
+    }
+}
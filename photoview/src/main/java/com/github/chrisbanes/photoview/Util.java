@@ -34,4 +34,21 @@ class Util {
     static int getPointerIndex(int action) {
         return (action & MotionEvent.ACTION_POINTER_INDEX_MASK) >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
     }
+
+    /**
+     * @return the largest power of two sample size at which an image still fills the target size
+     * when fitted into it, i.e. is not scaled up at the minimum zoom
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        // A fitted image touches the target on the side it is relatively largest on
+        final float maxSample = Math.max(width / (float) targetWidth, height / (float) targetHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 <= maxSample) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
 }
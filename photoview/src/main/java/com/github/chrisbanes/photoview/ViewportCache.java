@@ -0,0 +1,37 @@
+package com.github.chrisbanes.photoview;
+
+import android.util.LruCache;
+
+/**
+ * Remembers the {@link ViewportState} of the most recently viewed images, keyed by the id set
+ * with {@link PhotoView#setImageId(String)}. Share one instance between the PhotoViews of a
+ * gallery via {@link PhotoView#setViewportCache(ViewportCache)} and returning to an image shows it
+ * exactly as it was left.
+ */
+public class ViewportCache {
+
+    private final LruCache<String, ViewportState> mCache;
+
+    /**
+     * @param maxEntries the number of images to remember
+     */
+    public ViewportCache(int maxEntries) {
+        mCache = new LruCache<String, ViewportState>(maxEntries);
+    }
+
+    public ViewportState get(String imageId) {
+        return mCache.get(imageId);
+    }
+
+    public void put(String imageId, ViewportState state) {
+        mCache.put(imageId, state);
+    }
+
+    public void remove(String imageId) {
+        mCache.remove(imageId);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.chrisbanes.photoview;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A compact description of what a {@link PhotoView} is showing, independent of the view size
+ * and of the resolution the image was decoded at: which point of the image is in the centre of
+ * the view, at which scale and rotation.
+ */
+public final class ViewportState implements Parcelable {
+
+    private final String mImageId;
+    private final float mFocusX;
+    private final float mFocusY;
+    private final float mScale;
+    private final float mRotation;
+
+    /**
+     * @param imageId  identity of the image this state belongs to, may be null
+     * @param focusX   the image point in the centre of the view, as a fraction of the image width
+     * @param focusY   the image point in the centre of the view, as a fraction of the image height
+     * @param scale    the scale on top of the base (fit) scale
+     * @param rotation the rotation in degrees on top of the base rotation
+     */
+    public ViewportState(String imageId, float focusX, float focusY, float scale, float rotation) {
+        mImageId = imageId;
+        mFocusX = focusX;
+        mFocusY = focusY;
+        mScale = scale;
+        mRotation = rotation;
+    }
+
+    private ViewportState(Parcel in) {
+        mImageId = in.readString();
+        mFocusX = in.readFloat();
+        mFocusY = in.readFloat();
+        mScale = in.readFloat();
+        mRotation = in.readFloat();
+    }
+
+    public String getImageId() {
+        return mImageId;
+    }
+
+    public float getFocusX() {
+        return mFocusX;
+    }
+
+    public float getFocusY() {
+        return mFocusY;
+    }
+
+    public float getScale() {
+        return mScale;
+    }
+
+    public float getRotation() {
+        return mRotation;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mImageId);
+        dest.writeFloat(mFocusX);
+        dest.writeFloat(mFocusY);
+        dest.writeFloat(mScale);
+        dest.writeFloat(mRotation);
+    }
+
+    public static final Creator<ViewportState> CREATOR = new Creator<ViewportState>() {
+        @Override
+        public ViewportState createFromParcel(Parcel in) {
+            return new ViewportState(in);
+        }
+
+        @Override
+        public ViewportState[] newArray(int size) {
+            return new ViewportState[size];
+        }
+    };
+}
@@ -1,8 +1,13 @@
 package com.github.chrisbanes.photoview.sample;
 
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
+import android.transition.ChangeBounds;
+import android.transition.TransitionSet;
+
+import com.github.chrisbanes.photoview.PhotoViewTransition;
 
 /**
  * Activity that gets transitioned to
@@ -12,6 +17,14 @@ public class ActivityTransitionToActivity extends AppCompatActivity {
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (Build.VERSION.SDK_INT >= 21) {
+            // Animate PhotoView's own matrix rather than relying on ChangeImageTransform
+            TransitionSet transition = new TransitionSet();
+            transition.addTransition(new ChangeBounds());
+            transition.addTransition(new PhotoViewTransition());
+            getWindow().setSharedElementEnterTransition(transition);
+            getWindow().setSharedElementReturnTransition(transition);
+        }
         setContentView(R.layout.activity_transition_to);
     }
 }
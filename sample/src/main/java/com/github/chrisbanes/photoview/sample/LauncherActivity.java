@@ -36,7 +36,8 @@ public class LauncherActivity extends AppCompatActivity {
             "Picasso Sample",
             "Activity Transition Sample",
             "Immersive Sample",
-            "Translate Sample"
+            "Translate Sample",
+            "RecyclerView Pager Sample"
     };
 
     @Override
@@ -83,6 +84,9 @@ public class LauncherActivity extends AppCompatActivity {
                         case 6:
                             clazz = TranslateSampleActivity.class;
                             break;
+                        case 7:
+                            clazz = RecyclerPagerActivity.class;
+                            break;
                     }
 
                     Context context = holder.itemView.getContext();
@@ -0,0 +1,140 @@
+package com.github.chrisbanes.photoview.sample;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import com.github.chrisbanes.photoview.EncodedImageCache;
+import com.github.chrisbanes.photoview.GalleryPrefetcher;
+import com.github.chrisbanes.photoview.PhotoView;
+import com.github.chrisbanes.photoview.PhotoViewPagerAdapter;
+import com.github.chrisbanes.photoview.PhotoViewRecyclerPager;
+import com.github.chrisbanes.photoview.SharedBitmap;
+import com.github.chrisbanes.photoview.SharedBitmapCache;
+import com.github.chrisbanes.photoview.ViewportCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A pager over thousands of images which only ever creates a handful of PhotoViews
+ */
+public class RecyclerPagerActivity extends AppCompatActivity {
+
+    private static final int[] sDrawables = {R.drawable.wallpaper, R.drawable.bk_gallery_lightoff};
+    private static final int PAGE_COUNT = 5000;
+
+    private GalleryPrefetcher mPrefetcher;
+    // Pages showing the same image share one decoded bitmap
+    private final SharedBitmapCache mBitmapCache = new SharedBitmapCache(32 * 1024 * 1024);
+    // Once a bitmap is evicted, the compressed bytes are still around to decode it again
+    private final EncodedImageCache mEncodedCache = new EncodedImageCache(8 * 1024 * 1024);
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        final PhotoViewRecyclerPager pager = new PhotoViewRecyclerPager(this);
+        setContentView(pager);
+
+        mPrefetcher = new GalleryPrefetcher(new GalleryPrefetcher.Decoder() {
+            @Override
+            public Bitmap decode(int position, BitmapFactory.Options options) throws IOException {
+                if (options.inJustDecodeBounds) {
+                    // Only reads the header, so leave the encoded cache to the real pass
+                    return BitmapFactory.decodeResource(getResources(), getDrawable(position), options);
+                }
+                // Decode straight into the shared cache, where onBindPhotoView() picks it up
+                final SharedBitmap shared = mBitmapCache.decode(getSource(position), options,
+                        getDecoder(position));
+                if (shared != null) {
+                    shared.release();
+                }
+                return null;
+            }
+        }, 2);
+
+        PhotoViewPagerAdapter adapter = new PhotoViewPagerAdapter() {
+            @Override
+            protected void onBindPhotoView(final PhotoView photoView, final int position) {
+                // Keeps the prefetcher from decoding the page again while it is shown
+                mPrefetcher.take(position);
+                photoView.setTag(position);
+                final SharedBitmap shared = mBitmapCache.getBest(getSource(position), 1);
+                if (shared != null) {
+                    photoView.setImageBitmap(shared);
+                    return;
+                }
+                // Not prefetched in time, decode it off the UI thread
+                final int width = pager.getWidth();
+                final int height = pager.getHeight();
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SharedBitmap decoded = null;
+                        try {
+                            decoded = mBitmapCache.decode(getSource(position), width, height,
+                                    getDecoder(position));
+                        } catch (IOException e) {
+                            Log.w("RecyclerPager", "Could not decode page " + position, e);
+                        }
+                        if (decoded == null) {
+                            return;
+                        }
+                        final SharedBitmap result = decoded;
+                        photoView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (Integer.valueOf(position).equals(photoView.getTag())) {
+                                    photoView.setImageBitmap(result);
+                                } else {
+                                    // The page was recycled for another position meanwhile
+                                    result.release();
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public int getItemCount() {
+                return PAGE_COUNT;
+            }
+        };
+        adapter.setViewportCache(new ViewportCache(20));
+        pager.setAdapter(adapter);
+        pager.setPrefetcher(mPrefetcher);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPrefetcher.shutdown();
+    }
+
+    private static int getDrawable(int position) {
+        return sDrawables[position % sDrawables.length];
+    }
+
+    private static String getSource(int position) {
+        return "res:" + getDrawable(position);
+    }
+
+    /**
+     * @return a decoder which reads the image of the given page through the encoded cache
+     */
+    private SharedBitmapCache.Decoder getDecoder(int position) {
+        final Resources resources = getResources();
+        final int drawable = getDrawable(position);
+        return mEncodedCache.decoder(getSource(position), new EncodedImageCache.StreamSource() {
+            @Override
+            public InputStream open() {
+                return resources.openRawResource(drawable);
+            }
+        });
+    }
+}
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package com.github.chrisbanes.photoview.sample;
 
+import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
@@ -34,7 +35,10 @@ import com.github.chrisbanes.photoview.OnMatrixChangedListener;
 import com.github.chrisbanes.photoview.OnPhotoTapListener;
 import com.github.chrisbanes.photoview.OnSingleFlingListener;
 import com.github.chrisbanes.photoview.PhotoView;
+import com.github.chrisbanes.photoview.RegionTileDecoder;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Random;
 
 
@@ -51,6 +55,8 @@ public class SimpleSampleActivity extends AppCompatActivity {
 
     private Matrix mCurrentDisplayMatrix = null;
 
+    private RegionTileDecoder mTileDecoder;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -125,6 +131,10 @@ public class SimpleSampleActivity extends AppCompatActivity {
                         mCurrentDisplayMatrix = new Matrix();
                         mPhotoView.getDisplayMatrix(mCurrentDisplayMatrix);
                         return true;
+                    case R.id.menu_tiles_toggle:
+                        toggleTiles();
+                        item.setTitle(mTileDecoder != null ? R.string.menu_tiles_disable : R.string.menu_tiles_enable);
+                        return true;
                 }
                 return false;
             }
@@ -141,6 +151,41 @@ public class SimpleSampleActivity extends AppCompatActivity {
         mPhotoView.setOnSingleFlingListener(new SingleFlingListener());
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mTileDecoder != null) {
+            mTileDecoder.recycle();
+        }
+    }
+
+    private void toggleTiles() {
+        if (mTileDecoder != null) {
+            mPhotoView.setTileDecoder(null);
+            mTileDecoder.recycle();
+            mTileDecoder = null;
+            mPhotoView.setImageDrawable(ContextCompat.getDrawable(this, R.drawable.wallpaper));
+            return;
+        }
+        InputStream in = getResources().openRawResource(R.drawable.wallpaper);
+        try {
+            mTileDecoder = RegionTileDecoder.newInstance(in, RegionTileDecoder.getDefaultPoolSize(this));
+        } catch (IOException e) {
+            showToast("Could not open the image for tiling");
+            return;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+        // A quarter of the resolution does at the minimum zoom, tiles fill in the detail
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 4;
+        mPhotoView.setImageBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.wallpaper, options));
+        mPhotoView.setTileDecoder(mTileDecoder);
+    }
+
     private class PhotoTapListener implements OnPhotoTapListener {
 
         @Override
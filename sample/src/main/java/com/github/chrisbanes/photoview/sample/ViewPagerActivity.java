@@ -15,6 +15,9 @@
  *******************************************************************************/
 package com.github.chrisbanes.photoview.sample;
 
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
@@ -23,7 +26,10 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
 
+import com.github.chrisbanes.photoview.GalleryPrefetcher;
 import com.github.chrisbanes.photoview.PhotoView;
+import com.github.chrisbanes.photoview.PhotoViewAttacherPool;
+import com.github.chrisbanes.photoview.ViewportCache;
 
 public class ViewPagerActivity extends AppCompatActivity {
 
@@ -31,9 +37,38 @@ public class ViewPagerActivity extends AppCompatActivity {
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_view_pager);
-		ViewPager viewPager = (HackyViewPager) findViewById(R.id.view_pager);
+		final ViewPager viewPager = (HackyViewPager) findViewById(R.id.view_pager);
 
-		viewPager.setAdapter(new SamplePagerAdapter());
+		final SamplePagerAdapter adapter = new SamplePagerAdapter(getResources());
+		viewPager.setAdapter(adapter);
+		viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+			@Override
+			public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+				adapter.mPrefetcher.onPageScrolled(position, positionOffset);
+			}
+
+			@Override
+			public void onPageSelected(int position) {
+				adapter.mPrefetcher.setCurrentPage(position);
+			}
+		});
+		viewPager.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+			@Override
+			public void onLayoutChange(View v, int left, int top, int right, int bottom,
+									   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+				adapter.mPrefetcher.setTargetSize(right - left, bottom - top);
+				adapter.mPrefetcher.setCurrentPage(viewPager.getCurrentItem());
+			}
+		});
+		mAdapter = adapter;
+	}
+
+	private SamplePagerAdapter mAdapter;
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mAdapter.mPrefetcher.shutdown();
 	}
 
 	static class SamplePagerAdapter extends PagerAdapter {
@@ -41,6 +76,23 @@ public class ViewPagerActivity extends AppCompatActivity {
 		private static final int[] sDrawables = { R.drawable.wallpaper, R.drawable.wallpaper, R.drawable.wallpaper,
 				R.drawable.wallpaper, R.drawable.wallpaper, R.drawable.wallpaper };
 
+		// Pages are created and destroyed as the user swipes, so reuse their attachers
+		private final PhotoViewAttacherPool mAttacherPool = new PhotoViewAttacherPool(3);
+		// Swiping back to a page shows it zoomed as it was left
+		private final ViewportCache mViewportCache = new ViewportCache(sDrawables.length);
+		// Decodes the pages ahead of the swipe in the background
+		final GalleryPrefetcher mPrefetcher;
+
+		SamplePagerAdapter(final Resources resources) {
+			mPrefetcher = new GalleryPrefetcher(new GalleryPrefetcher.Decoder() {
+				@Override
+				public Bitmap decode(int position, BitmapFactory.Options options) {
+					return BitmapFactory.decodeResource(resources, sDrawables[position], options);
+				}
+			}, 2);
+			mPrefetcher.setCount(sDrawables.length);
+		}
+
 		@Override
 		public int getCount() {
 			return sDrawables.length;
@@ -48,8 +100,15 @@ public class ViewPagerActivity extends AppCompatActivity {
 
 		@Override
 		public View instantiateItem(ViewGroup container, int position) {
-			PhotoView photoView = new PhotoView(container.getContext());
-			photoView.setImageResource(sDrawables[position]);
+			PhotoView photoView = new PhotoView(container.getContext(), mAttacherPool);
+			photoView.setViewportCache(mViewportCache);
+			photoView.setImageId(String.valueOf(position));
+			Bitmap prefetched = mPrefetcher.take(position);
+			if (prefetched != null) {
+				photoView.setImageBitmap(prefetched);
+			} else {
+				photoView.setImageResource(sDrawables[position]);
+			}
 
 			// Now just add PhotoView to ViewPager and return it
 			container.addView(photoView, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
@@ -59,7 +118,9 @@ public class ViewPagerActivity extends AppCompatActivity {
 
 		@Override
 		public void destroyItem(ViewGroup container, int position, Object object) {
-			container.removeView((View) object);
+			PhotoView photoView = (PhotoView) object;
+			container.removeView(photoView);
+			photoView.releaseAttacher();
 		}
 
 		@Override